@@ -0,0 +1,122 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * AsciiSequence is a read-only {@link CharSequence} view of ASCII bytes, in a
+ * byte[] or a {@link ByteBuffer}, such as the request line of an HTTP request.
+ * <p>
+ * Each byte is one char, nothing is decoded or copied until a slice of it is
+ * turned into a String. The bytes must stay unchanged while the view is in use.
+ * Callers check {@link #indexOfNonAscii} first, a byte of 0x80 or more would
+ * otherwise be read as the Latin-1 char of the same value.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-20:50
+ */
+final class AsciiSequence implements CharSequence {
+
+  private final byte[]     array;  // null if the bytes are in buffer
+  private final ByteBuffer buffer;
+  private final int        offset;
+  private final int        length;
+
+  AsciiSequence(byte[] array, int offset, int length) {
+    this.array = array;
+    this.buffer = null;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * The view of buffer[offset:offset+length], by absolute index, so the position of buffer is never moved.
+   */
+  AsciiSequence(ByteBuffer buffer, int offset, int length) {
+    if (buffer.hasArray()) {
+      this.array = buffer.array();
+      this.buffer = null;
+      this.offset = buffer.arrayOffset() + offset;
+    } else {
+      this.array = null;
+      this.buffer = buffer;
+      this.offset = offset;
+    }
+    this.length = length;
+  }
+
+  private AsciiSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+    this.array = array;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * indexOfNonAscii returns the index of the first byte of 0x80 or more in this view, or -1 if there is none.
+   */
+  int indexOfNonAscii() {
+    if (array != null) {
+      for (int i = 0; i < length; i++) {
+        if (array[offset + i] < 0) {
+          return i;
+        }
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(offset + i) < 0) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * decode returns the whole view decoded as UTF-8, for input that is not ASCII.
+   */
+  String decode() {
+    if (array != null) {
+      return new String(array, offset, length, StandardCharsets.UTF_8);
+    }
+    return new String(copy(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + length);
+    }
+    return (char) ((array != null ? array[offset + index] : buffer.get(offset + index)) & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || start > end || end > length) {
+      throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of bounds for length " + length);
+    }
+    return new AsciiSequence(array, buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    if (array != null) {
+      return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+    }
+    return new String(copy(), StandardCharsets.ISO_8859_1);
+  }
+
+  private byte[] copy() {
+    byte[] b = new byte[length];
+    for (int i = 0; i < length; i++) {
+      b[i] = buffer.get(offset + i);
+    }
+    return b;
+  }
+
+}
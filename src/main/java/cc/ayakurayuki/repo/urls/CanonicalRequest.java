@@ -0,0 +1,315 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+/**
+ * CanonicalRequest builds the canonical URI and the canonical query string of
+ * an AWS Signature Version 4 canonical request.
+ * <p>
+ * Every character but the RFC 3986 unreserved ones is percent-encoded with
+ * uppercase hexadecimal digits, see {@link PercentEncodeSet#RFC3986_UNRESERVED}.
+ * Existing escapes are decoded and encoded again, so equivalent inputs give the same output.
+ * <p>
+ * The query parameters are encoded once into a single buffer, and only their
+ * offsets are sorted, by encoded key and then encoded value.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-17:55
+ */
+public abstract class CanonicalRequest {
+
+  private static final PercentEncodeSet SET = PercentEncodeSet.RFC3986_UNRESERVED;
+
+  /**
+   * canonicalUri returns the canonical URI of url, each path segment encoded once, as S3 wants it.
+   */
+  public static String canonicalUri(URL url) {
+    return canonicalUri(url, false);
+  }
+
+  /**
+   * canonicalUri returns the canonical URI of url. Services other than S3 want
+   * each path segment encoded twice, set doubleEncode for them.
+   * <p>
+   * The path is used as-is, dot segments are not removed.
+   */
+  public static String canonicalUri(URL url, boolean doubleEncode) {
+    String path = url.escapedPath();
+    StringBuilder buf = new StringBuilder(path.length() + 16);
+    // escapedPath is always validly encoded
+    appendUri(buf, path, doubleEncode);
+    return buf.toString();
+  }
+
+  /**
+   * canonicalUri returns the canonical URI of an escaped path, like {@link #canonicalUri(URL, boolean)} does.
+   * It returns an {@link cc.ayakurayuki.repo.urls.exception.EscapeException} if the path has a malformed escape.
+   */
+  public static Result<String, Exception> canonicalUri(String escapedPath, boolean doubleEncode) {
+    StringBuilder buf = new StringBuilder(escapedPath.length() + 16);
+    int bad = appendUri(buf, escapedPath, doubleEncode);
+    if (bad >= 0) {
+      return new Result<>("", URLs.checkEscapes(escapedPath, bad, escapedPath.length(), Encoding.PathSegment));
+    }
+    return Result.ok(buf.toString());
+  }
+
+  /**
+   * canonicalQuery returns the canonical form of the raw query, the parameters
+   * sorted and joined by '&amp;'.
+   * <p>
+   * The query is read like {@link URLs#ParseQuery(String)} does, so '+' is a space.
+   * Like ParseQuery, the result always holds the valid parameters found, and err
+   * describes the first malformed escape or semicolon separator, if any.
+   */
+  public static Result<String, Exception> canonicalQuery(String rawQuery) {
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return Result.ok("");
+    }
+
+    Params params = new Params(rawQuery.length() + 16);
+    Exception e = URLs.splitQuery(rawQuery, 0, rawQuery.length(), (s, keyStart, keyEnd, valueStart, valueEnd) -> {
+      int mark = params.buf.length();
+      if (appendComponent(params.buf, s, keyStart, keyEnd)) {
+        int mid = params.buf.length();
+        if (appendComponent(params.buf, s, valueStart, valueEnd)) {
+          params.add(mark, mid, params.buf.length());
+          return true;
+        }
+      }
+      params.buf.setLength(mark);
+      return false;
+    });
+    return new Result<>(params.join(), e);
+  }
+
+  /**
+   * canonicalQuery returns the canonical form of the query values.
+   */
+  public static String canonicalQuery(Values values) {
+    if (values == null || values.isEmpty()) {
+      return "";
+    }
+
+    Params params = new Params(values.size() * 32);
+    for (Entry<String, List<String>> entry : values.entrySet()) {
+      List<String> vs = entry.getValue();
+      if (vs == null) {
+        continue;
+      }
+      for (String v : vs) {
+        int mark = params.buf.length();
+        URLs.escapeTo(params.buf, entry.getKey(), SET);
+        int keyEnd = params.buf.length();
+        URLs.escapeTo(params.buf, Objects.toString(v, ""), SET);
+        params.add(mark, keyEnd, params.buf.length());
+      }
+    }
+    return params.join();
+  }
+
+  /**
+   * appendUri appends the canonical form of the escaped path s to buf.
+   *
+   * @return the index of a malformed escape, or -1
+   */
+  private static int appendUri(StringBuilder buf, String s, boolean doubleEncode) {
+    int n = s.length();
+    if (n == 0 || s.charAt(0) != '/') {
+      buf.append('/');
+    }
+    for (int i = 0; i < n; ) {
+      char c = s.charAt(i);
+      if (c == '%') {
+        if (i + 2 >= n || Chars.unhex(s.charAt(i + 1)) < 0 || Chars.unhex(s.charAt(i + 2)) < 0) {
+          return i;
+        }
+        appendByte(buf, Chars.unhex(s.charAt(i + 1)) << 4 | Chars.unhex(s.charAt(i + 2)), doubleEncode);
+        i += 3;
+      } else if (c == '/') {
+        buf.append(c);
+        i++;
+      } else {
+        int cp = Utf8.codePointAt(s, i, n);
+        i += Character.charCount(cp);
+        appendCodePoint(buf, cp, doubleEncode);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * appendComponent decodes the query component s[from:to] and appends its canonical form to buf.
+   *
+   * @return false if it has a malformed escape
+   */
+  private static boolean appendComponent(StringBuilder buf, CharSequence s, int from, int to) {
+    for (int i = from; i < to; ) {
+      char c = s.charAt(i);
+      if (c == '%') {
+        if (i + 2 >= to || Chars.unhex(s.charAt(i + 1)) < 0 || Chars.unhex(s.charAt(i + 2)) < 0) {
+          return false;
+        }
+        appendByte(buf, Chars.unhex(s.charAt(i + 1)) << 4 | Chars.unhex(s.charAt(i + 2)), false);
+        i += 3;
+      } else if (c == '+') {
+        buf.append("%20");
+        i++;
+      } else {
+        int cp = Utf8.codePointAt(s, i, to);
+        i += Character.charCount(cp);
+        appendCodePoint(buf, cp, false);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * appendCodePoint appends the UTF-8 bytes of cp to buf, encoded if they must be.
+   */
+  private static void appendCodePoint(StringBuilder buf, int cp, boolean doubleEncode) {
+    if (cp < 0x80) {
+      appendByte(buf, cp, doubleEncode);
+    } else if (cp < 0x800) {
+      appendByte(buf, 0xC0 | (cp >> 6), doubleEncode);
+      appendByte(buf, 0x80 | (cp & 0x3F), doubleEncode);
+    } else if (cp < 0x10000) {
+      appendByte(buf, 0xE0 | (cp >> 12), doubleEncode);
+      appendByte(buf, 0x80 | ((cp >> 6) & 0x3F), doubleEncode);
+      appendByte(buf, 0x80 | (cp & 0x3F), doubleEncode);
+    } else {
+      appendByte(buf, 0xF0 | (cp >> 18), doubleEncode);
+      appendByte(buf, 0x80 | ((cp >> 12) & 0x3F), doubleEncode);
+      appendByte(buf, 0x80 | ((cp >> 6) & 0x3F), doubleEncode);
+      appendByte(buf, 0x80 | (cp & 0x3F), doubleEncode);
+    }
+  }
+
+  /**
+   * appendByte appends b to buf as is if it is unreserved, or as %XX, or as %25XX when doubleEncode is set.
+   */
+  private static void appendByte(StringBuilder buf, int b, boolean doubleEncode) {
+    if (!SET.shouldEncode((char) b)) {
+      buf.append((char) b);
+      return;
+    }
+    buf.append(doubleEncode ? "%25" : "%");
+    buf.append(UrlEncoder.upperhex[b >> 4]).append(UrlEncoder.upperhex[b & 0xF]);
+  }
+
+  /**
+   * Params holds the encoded parameters back to back in one buffer, and
+   * for each of them the offsets of its key and value.
+   */
+  private static final class Params {
+
+    final StringBuilder buf;
+    int[] offsets = new int[3 * 8]; // key start, key end (value start), value end
+    int   size;
+
+    Params(int capacity) {
+      this.buf = new StringBuilder(capacity);
+    }
+
+    void add(int keyStart, int keyEnd, int valueEnd) {
+      if (3 * size + 3 > offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[3 * size] = keyStart;
+      offsets[3 * size + 1] = keyEnd;
+      offsets[3 * size + 2] = valueEnd;
+      size++;
+    }
+
+    /**
+     * join sorts the parameters and joins them as key=value pairs separated by '&amp;'.
+     */
+    String join() {
+      if (size == 0) {
+        return "";
+      }
+      int[] order = new int[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      sort(order, new int[size], 0, size);
+
+      char[] out = new char[buf.length() + 2 * size - 1];
+      int w = 0;
+      for (int k = 0; k < size; k++) {
+        int p = 3 * order[k];
+        if (k > 0) {
+          out[w++] = '&';
+        }
+        buf.getChars(offsets[p], offsets[p + 1], out, w);
+        w += offsets[p + 1] - offsets[p];
+        out[w++] = '=';
+        buf.getChars(offsets[p + 1], offsets[p + 2], out, w);
+        w += offsets[p + 2] - offsets[p + 1];
+      }
+      return new String(out, 0, w);
+    }
+
+    /**
+     * sort is a stable merge sort of order[lo:hi], by key and then value.
+     */
+    private void sort(int[] order, int[] tmp, int lo, int hi) {
+      if (hi - lo <= 8) {
+        for (int i = lo + 1; i < hi; i++) {
+          int x = order[i];
+          int j = i - 1;
+          for (; j >= lo && compare(order[j], x) > 0; j--) {
+            order[j + 1] = order[j];
+          }
+          order[j + 1] = x;
+        }
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      sort(order, tmp, lo, mid);
+      sort(order, tmp, mid, hi);
+      if (compare(order[mid - 1], order[mid]) <= 0) {
+        return;
+      }
+      System.arraycopy(order, lo, tmp, lo, hi - lo);
+      for (int i = lo, a = lo, b = mid; i < hi; i++) {
+        if (b >= hi || (a < mid && compare(tmp[a], tmp[b]) <= 0)) {
+          order[i] = tmp[a++];
+        } else {
+          order[i] = tmp[b++];
+        }
+      }
+    }
+
+    private int compare(int x, int y) {
+      int px = 3 * x;
+      int py = 3 * y;
+      int c = compareRange(offsets[px], offsets[px + 1], offsets[py], offsets[py + 1]);
+      if (c != 0) {
+        return c;
+      }
+      return compareRange(offsets[px + 1], offsets[px + 2], offsets[py + 1], offsets[py + 2]);
+    }
+
+    /**
+     * compareRange compares buf[a0:a1] and buf[b0:b1]. The encoded text is ASCII,
+     * so this is the byte order the signature wants.
+     */
+    private int compareRange(int a0, int a1, int b0, int b1) {
+      int n = Math.min(a1 - a0, b1 - b0);
+      for (int i = 0; i < n; i++) {
+        int c = buf.charAt(a0 + i) - buf.charAt(b0 + i);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return (a1 - a0) - (b1 - b0);
+    }
+
+  }
+
+}
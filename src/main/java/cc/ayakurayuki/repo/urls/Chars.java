@@ -0,0 +1,366 @@
+package cc.ayakurayuki.repo.urls;
+
+/**
+ * Chars holds the precomputed ASCII classification tables shared by the
+ * escaping, validation and parsing routines in this package.
+ * <p>
+ * Every ASCII character maps to an int of flag bits, so each hot-path check is
+ * a single array load and mask instead of a chain of switch statements.
+ * Characters outside ASCII never hit the tables, each check falls back to the
+ * rule it used before the tables existed.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-10:12
+ */
+abstract class Chars {
+
+  // bits  0..7  : must be escaped in Encoding with ordinal n
+  // bits  8..15 : allowed unescaped in a valid-encoded string in Encoding with ordinal n
+  private static final int ESCAPE_SHIFT        = 0;
+  private static final int VALID_ENCODED_SHIFT = 8;
+
+  private static final int USERINFO     = 1 << 16; // unreserved / sub-delims / ":" / "%" / "@"
+  private static final int SCHEME_ALPHA = 1 << 17; // ALPHA
+  private static final int SCHEME_CHAR  = 1 << 18; // DIGIT / "+" / "-" / "."
+  private static final int DIGIT        = 1 << 19; // DIGIT
+  private static final int CTL          = 1 << 20; // 0x00-0x1f, 0x7f
+
+  private static final int[]  TABLE = new int[128];
+  private static final byte[] HEX   = new byte[128];
+
+  static {
+    Encoding[] modes = Encoding.values();
+    for (char c = 0; c < 128; c++) {
+      int flags = 0;
+      for (Encoding mode : modes) {
+        boolean escape = escapeRule(c, mode);
+        if (escape) {
+          flags |= 1 << (ESCAPE_SHIFT + mode.ordinal());
+        }
+        if (isSubDelimOrAllowed(c) || !escape) {
+          flags |= 1 << (VALID_ENCODED_SHIFT + mode.ordinal());
+        }
+      }
+      if (isUserinfoRule(c)) {
+        flags |= USERINFO;
+      }
+      if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
+        flags |= SCHEME_ALPHA;
+      }
+      if (('0' <= c && c <= '9') || c == '+' || c == '-' || c == '.') {
+        flags |= SCHEME_CHAR;
+      }
+      if ('0' <= c && c <= '9') {
+        flags |= DIGIT;
+      }
+      if (c < ' ' || c == 0x7f) {
+        flags |= CTL;
+      }
+      TABLE[c] = flags;
+      HEX[c] = (byte) Character.digit(c, 16);
+    }
+  }
+
+  /**
+   * shouldEscape reports whether c must be percent-encoded in the given section of a URL.
+   * Non-ASCII characters are always escaped.
+   */
+  static boolean shouldEscape(char c, Encoding mode) {
+    if (c < 128) {
+      return (TABLE[c] & (1 << (ESCAPE_SHIFT + mode.ordinal()))) != 0;
+    }
+    return true;
+  }
+
+  /**
+   * validEncoded reports whether c may appear as-is in a valid-encoded path or fragment.
+   * Non-ASCII characters are never valid.
+   */
+  static boolean validEncoded(char c, Encoding mode) {
+    if (c < 128) {
+      return (TABLE[c] & (1 << (VALID_ENCODED_SHIFT + mode.ordinal()))) != 0;
+    }
+    return false;
+  }
+
+  /**
+   * isUserinfo reports whether c may appear in the userinfo of an authority.
+   * Non-ASCII letters and digits are accepted.
+   */
+  static boolean isUserinfo(char c) {
+    if (c < 128) {
+      return (TABLE[c] & USERINFO) != 0;
+    }
+    return Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * isSchemeAlpha reports whether c may start a scheme.
+   */
+  static boolean isSchemeAlpha(char c) {
+    if (c < 128) {
+      return (TABLE[c] & SCHEME_ALPHA) != 0;
+    }
+    return Character.isLetter(c);
+  }
+
+  /**
+   * isSchemeChar reports whether c may appear in a scheme, but not as its first character.
+   */
+  static boolean isSchemeChar(char c) {
+    if (c < 128) {
+      return (TABLE[c] & SCHEME_CHAR) != 0;
+    }
+    return Character.isDigit(c);
+  }
+
+  static boolean isDigit(char c) {
+    if (c < 128) {
+      return (TABLE[c] & DIGIT) != 0;
+    }
+    return Character.isDigit(c);
+  }
+
+  /**
+   * isCTL reports whether c is an ASCII control character.
+   */
+  static boolean isCTL(char c) {
+    return c < 128 && (TABLE[c] & CTL) != 0;
+  }
+
+  /**
+   * unhex returns the value of the hexadecimal digit c, or -1 if c is not one.
+   */
+  static int unhex(char c) {
+    if (c < 128) {
+      return HEX[c];
+    }
+    return Character.digit(c, 16);
+  }
+
+  // -------------------- scalar scans -------------------- //
+
+  /**
+   * indexOfEscape returns the index of the first character in s[from:to] that
+   * must be escaped in the given mode, or to if there is none.
+   */
+  static int indexOfEscape(CharSequence s, int from, int to, Encoding mode) {
+    while (from < to && !shouldEscape(s.charAt(from), mode)) {
+      from++;
+    }
+    return from;
+  }
+
+  /**
+   * indexOfCTL returns the index of the first ASCII control character in s[from:to],
+   * or to if there is none.
+   */
+  static int indexOfCTL(CharSequence s, int from, int to) {
+    while (from < to && !isCTL(s.charAt(from))) {
+      from++;
+    }
+    return from;
+  }
+
+  /**
+   * indexOfPercent returns the index of the first '%', '+' or non-ASCII character
+   * in s[from:to], or to if there is none. Everything before it unescapes to itself.
+   */
+  static int indexOfPercent(CharSequence s, int from, int to) {
+    for (; from < to; from++) {
+      char c = s.charAt(from);
+      if (c == '%' || c == '+' || c >= 0x80) {
+        break;
+      }
+    }
+    return from;
+  }
+
+  // -------------------- table sources -------------------- //
+
+  /**
+   * escapeRule is the reference definition the escape table is compiled from.
+   */
+  private static boolean escapeRule(char c, Encoding mode) {
+    // unreserved characters (alphanum)
+    if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9')) {
+      return false;
+    }
+
+    if (mode == Encoding.Host || mode == Encoding.Zone) {
+      // Host allows
+      //   sub-delims = "!" / "$" / "&" / "'" / "(" / ")" / "*" / "+" / "," / ";" / "="
+      // as part of reg-name.
+      // We add : because we include :port as part of host.
+      // We add [ ] because we include [ipv6]:port as part of host.
+      // We add < > because they're the only characters left that
+      // we could possibly allow, and Parse will reject them if we
+      // escape them (because hosts can't use %-encoding for
+      // ASCII bytes).
+      switch (c) {
+        case '!':
+        case '$':
+        case '&':
+        case '\'':
+        case '(':
+        case ')':
+        case '*':
+        case '+':
+        case ',':
+        case ';':
+        case '=':
+        case ':':
+        case '[':
+        case ']':
+        case '<':
+        case '>':
+        case '"':
+          return false;
+      }
+    }
+
+    switch (c) {
+      // unreserved characters (mark)
+      case '-':
+      case '_':
+      case '.':
+      case '~':
+        return false;
+
+      // reserved characters (reserved)
+      case '$':
+      case '&':
+      case '+':
+      case ',':
+      case '/':
+      case ':':
+      case ';':
+      case '=':
+      case '?':
+      case '@':
+        // Different sections of the URL allow a few of the reserved characters to appear unescaped.
+        switch (mode) {
+          case Path:
+            // The RFC allows : @ & = + $ but saves / ; , for assigning
+            // meaning to individual path segments. This package
+            // only manipulates the path as a whole, so we allow those
+            // last three as well. That leaves only ? to escape.
+            return c == '?';
+
+          case PathSegment:
+            // The RFC allows : @ & = + $ but saves / ; , for assigning
+            // meaning to individual path segments.
+            return c == '/' || c == ';' || c == ',' || c == '?';
+
+          case UserPassword:
+            // The RFC allows ';', ':', '&', '=', '+', '$', and ',' in
+            // userinfo, so we must escape only '@', '/', and '?'.
+            // The parsing of userinfo treats ':' as special so we must escape
+            // that too.
+            return c == '@' || c == '/' || c == '?' || c == ':';
+
+          case QueryComponent:
+            // The RFC reserves (so we must escape) everything.
+            return true;
+
+          case Fragment:
+            // The RFC text is silent but the grammar allows
+            // everything, so escape nothing.
+            return false;
+        }
+    }
+
+    if (mode == Encoding.Fragment) {
+      // RFC 3986 §2.2 allows not escaping sub-delims. A subset of sub-delims are
+      // included in reserved from RFC 2396 §2.2. The remaining sub-delims do not
+      // need to be escaped. To minimize potential breakage, we apply two restrictions:
+      // (1) we always escape sub-delims outside of the fragment, and (2) we always
+      // escape single quote to avoid breaking callers that had previously assumed that
+      // single quotes would be escaped. See issue #19917.
+      switch (c) {
+        case '!':
+        case '(':
+        case ')':
+        case '*':
+          return false;
+      }
+    }
+
+    // Everything else must be escaped.
+    return true;
+  }
+
+  /**
+   * isSubDelimOrAllowed lists the characters validEncoded accepts regardless of mode.
+   * <p>
+   * RFC 3986, Appendix A.
+   * pchar = unreserved / pct-encoded / sub-delims / ":" / "@".
+   * shouldEscape is not quite compliant with the RFC,
+   * so we check the sub-delims ourselves and let
+   * shouldEscape handle the others.
+   */
+  private static boolean isSubDelimOrAllowed(char c) {
+    switch (c) {
+      case '!':
+      case '$':
+      case '&':
+      case '\'':
+      case '(':
+      case ')':
+      case '*':
+      case '+':
+      case ',':
+      case ';':
+      case '=':
+      case ':':
+      case '@':
+        return true;
+
+      case '[':
+      case ']':
+        // ok - not specified in RFC 3986 but left alone by modern browsers
+        return true;
+
+      case '%':
+        // ok - percent encoded, will decode
+        return true;
+
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * isUserinfoRule is the reference definition of userinfo characters per RFC 3986 Section 3.2.1,
+   * plus '%' (validated later by unescape) and '@'.
+   */
+  private static boolean isUserinfoRule(char c) {
+    if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9')) {
+      return true;
+    }
+    switch (c) {
+      case '-':
+      case '.':
+      case '_':
+      case ':':
+      case '~':
+      case '!':
+      case '$':
+      case '&':
+      case '\'':
+      case '(':
+      case ')':
+      case '*':
+      case '+':
+      case ',':
+      case ';':
+      case '=':
+      case '%':
+      case '@':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+}
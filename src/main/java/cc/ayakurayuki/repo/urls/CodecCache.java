@@ -0,0 +1,354 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CodecCache memoizes {@link URLs#escape(String, Encoding)} and {@link URLs#unescape(String, Encoding)}
+ * for inputs that repeat, such as common parameter names and values.
+ * <p>
+ * The cache is bounded: it holds at most {@code maximumSize} results, and only
+ * for inputs of at most {@code maxInputLength} characters. A result is only
+ * admitted once its input has been seen {@code minFrequency} times, and it only
+ * replaces a result whose input has been seen less often, so one-off inputs do
+ * not push out the common ones. The frequencies are approximate and decay over time.
+ * <p>
+ * Lookups never wait for a lock. Entries are immutable and stored in a plain array, so a
+ * lookup is a hash, two array loads and a string comparison; concurrent writers
+ * may overwrite each other, which only loses a cached result. A hit is only
+ * noted in a small buffer of the calling thread. The frequencies are written by
+ * one thread at a time, the one that wins a try-lock to count a full buffer or a
+ * miss; a thread that loses it drops its buffer or leaves its miss uncounted, so
+ * hot lookups on many cores do not all write to the same cache lines. The hit and
+ * miss counters are striped {@link LongAdder}s.
+ * <pre>{@code
+ * CodecCache cache = new CodecCache(4096, 64);
+ * String escaped = cache.escape("lang=ja", Encoding.QueryComponent);
+ * }</pre>
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-18:30
+ */
+public final class CodecCache {
+
+  private static final int ESCAPE   = 0;
+  private static final int UNESCAPE = 1;
+
+  private final Entry[]   table;          // 2-way set associative, the two ways are adjacent
+  private final int       mask;           // of a set's first slot
+  private final int       maxInputLength;
+  private final int       minFrequency;
+  private final Sketch    sketch;
+  private final LongAdder hits   = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private final ThreadLocal<ReadBuffer> readBuffers = ThreadLocal.withInitial(ReadBuffer::new);
+  private final AtomicBoolean           counting    = new AtomicBoolean(); // held while the sketch is written
+
+  /**
+   * @param maximumSize    the most results kept, rounded up to a power of two
+   * @param maxInputLength the longest input cached, longer ones are always computed
+   */
+  public CodecCache(int maximumSize, int maxInputLength) {
+    this(maximumSize, maxInputLength, 2);
+  }
+
+  /**
+   * @param maximumSize    the most results kept, rounded up to a power of two
+   * @param maxInputLength the longest input cached, longer ones are always computed
+   * @param minFrequency   how many times an input must be seen before its result is kept
+   */
+  public CodecCache(int maximumSize, int maxInputLength, int minFrequency) {
+    if (maximumSize < 2) {
+      throw new IllegalArgumentException("maximum size " + maximumSize + " is less than 2");
+    }
+    if (maxInputLength < 0) {
+      throw new IllegalArgumentException("max input length " + maxInputLength + " is negative");
+    }
+    if (minFrequency < 1 || minFrequency > Sketch.MAX_COUNT) {
+      throw new IllegalArgumentException("min frequency " + minFrequency + " is not in [1, " + Sketch.MAX_COUNT + "]");
+    }
+    int size = Integer.highestOneBit(maximumSize - 1) << 1;
+    this.table = new Entry[size];
+    this.mask = (size - 1) & ~1;
+    this.maxInputLength = maxInputLength;
+    this.minFrequency = minFrequency;
+    this.sketch = new Sketch(size);
+  }
+
+  /**
+   * escape returns {@link URLs#escape(String, Encoding)} of s, from the cache if it can.
+   */
+  public String escape(String s, Encoding mode) {
+    Objects.requireNonNull(mode, "mode");
+    if (s.length() > maxInputLength) {
+      return URLs.escape(s, mode);
+    }
+    int kind = kind(mode, ESCAPE);
+    int hash = hash(s, kind);
+    String value = get(s, kind, hash);
+    if (value != null) {
+      return value;
+    }
+    value = URLs.escape(s, mode);
+    put(s, kind, hash, value);
+    return value;
+  }
+
+  /**
+   * unescape returns {@link URLs#unescape(String, Encoding)} of s, from the cache if it can.
+   * Errors are never cached.
+   */
+  public Result<String, Exception> unescape(String s, Encoding mode) {
+    Objects.requireNonNull(mode, "mode");
+    if (s.length() > maxInputLength) {
+      return URLs.unescape(s, mode);
+    }
+    int kind = kind(mode, UNESCAPE);
+    int hash = hash(s, kind);
+    String value = get(s, kind, hash);
+    if (value != null) {
+      return Result.ok(value);
+    }
+    Result<String, Exception> result = URLs.unescape(s, mode);
+    if (!result.isErr()) {
+      put(s, kind, hash, result.ok());
+    }
+    return result;
+  }
+
+  /**
+   * hits returns how many lookups were answered from the cache.
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * misses returns how many lookups had to be computed, not counting inputs longer than maxInputLength.
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * hitRate returns hits / (hits + misses), or 0 before the first lookup.
+   */
+  public double hitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * clear drops every cached result and resets the frequencies and counters.
+   */
+  public void clear() {
+    Arrays.fill(table, null);
+    while (!counting.compareAndSet(false, true)) {
+      Thread.onSpinWait();
+    }
+    try {
+      sketch.clear();
+    } finally {
+      counting.set(false);
+    }
+    hits.reset();
+    misses.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CodecCache(maximumSize=%d, hits=%d, misses=%d)", table.length, hits(), misses());
+  }
+
+  private String get(String s, int kind, int hash) {
+    int i = hash & mask;
+    Entry e = table[i];
+    if (e == null || !e.matches(s, kind, hash)) {
+      e = table[i + 1];
+      if (e == null || !e.matches(s, kind, hash)) {
+        misses.increment();
+        return null;
+      }
+    }
+    hits.increment();
+    ReadBuffer buf = readBuffers.get();
+    buf.hashes[buf.size++] = hash;
+    if (buf.size == ReadBuffer.SIZE) {
+      if (counting.compareAndSet(false, true)) {
+        try {
+          buf.drainTo(sketch);
+        } finally {
+          counting.set(false);
+        }
+      }
+      // a buffer that finds the sketch busy is dropped, which only makes its estimates a little lower
+      buf.size = 0;
+    }
+    return e.value;
+  }
+
+  private void put(String s, int kind, int hash, String value) {
+    int frequency;
+    if (counting.compareAndSet(false, true)) {
+      try {
+        // the hits of this thread count before its miss is weighed against the residents
+        readBuffers.get().drainTo(sketch);
+        frequency = sketch.increment(hash);
+      } finally {
+        counting.set(false);
+      }
+    } else {
+      frequency = sketch.frequency(hash) + 1;
+    }
+    if (frequency < minFrequency) {
+      return;
+    }
+
+    int i = hash & mask;
+    Entry a = table[i];
+    Entry b = table[i + 1];
+    int victim;
+    if (a == null) {
+      victim = i;
+    } else if (b == null) {
+      victim = i + 1;
+    } else {
+      int fa = sketch.frequency(a.hash);
+      int fb = sketch.frequency(b.hash);
+      victim = fa <= fb ? i : i + 1;
+      if (frequency <= Math.min(fa, fb)) {
+        // the residents are at least as popular, keep them
+        return;
+      }
+    }
+    table[victim] = new Entry(s, kind, hash, value);
+  }
+
+  private static int kind(Encoding mode, int op) {
+    return mode.ordinal() << 1 | op;
+  }
+
+  private static int hash(String s, int kind) {
+    int h = (s.hashCode() ^ kind) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Entry is an immutable cached result. Its fields are final, so it can be
+   * shared through the table without synchronization.
+   */
+  private static final class Entry {
+
+    final String key;
+    final int    kind;
+    final int    hash;
+    final String value;
+
+    Entry(String key, int kind, int hash, String value) {
+      this.key = key;
+      this.kind = kind;
+      this.hash = hash;
+      this.value = value;
+    }
+
+    boolean matches(String s, int kind, int hash) {
+      return this.hash == hash && this.kind == kind && this.key.equals(s);
+    }
+
+  }
+
+  /**
+   * ReadBuffer holds the hashes of the latest hits of one thread, until they are counted.
+   */
+  private static final class ReadBuffer {
+
+    static final int SIZE = 16;
+
+    final int[] hashes = new int[SIZE];
+    int         size;
+
+    void drainTo(Sketch sketch) {
+      for (int i = 0; i < size; i++) {
+        sketch.increment(hashes[i]);
+      }
+      size = 0;
+    }
+
+  }
+
+  /**
+   * Sketch is a count-min sketch of 4-bit counters that estimates how often each hash was seen.
+   * All counters are halved every {@code 10 * width} increments, so old popularity fades.
+   * <p>
+   * It is only written by the thread that holds {@link CodecCache#counting}, which also does
+   * the halving, so increments and halvings never interleave. Reads take no lock and
+   * may see a counter a little out of date.
+   */
+  private static final class Sketch {
+
+    static final int MAX_COUNT = 15;
+
+    private final byte[] counters;
+    private final int    mask;
+    private final int    sampleSize;
+    private       int    additions;
+
+    Sketch(int width) {
+      int size = Math.max(256, width * 16);
+      this.counters = new byte[size];
+      this.mask = size - 1;
+      this.sampleSize = 10 * width;
+    }
+
+    /**
+     * increment counts hash once more and returns its new estimate.
+     */
+    int increment(int hash) {
+      int min = MAX_COUNT;
+      for (int k = 0; k < 4; k++) {
+        int i = index(hash, k);
+        int c = counters[i];
+        if (c < MAX_COUNT) {
+          counters[i] = (byte) ++c;
+        }
+        min = Math.min(min, c);
+      }
+      if (++additions >= sampleSize) {
+        reset();
+      }
+      return min;
+    }
+
+    int frequency(int hash) {
+      int min = MAX_COUNT;
+      for (int k = 0; k < 4; k++) {
+        min = Math.min(min, counters[index(hash, k)]);
+      }
+      return min;
+    }
+
+    void clear() {
+      Arrays.fill(counters, (byte) 0);
+      additions = 0;
+    }
+
+    private void reset() {
+      additions = 0;
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = (byte) (counters[i] >> 1);
+      }
+    }
+
+    private int index(int hash, int k) {
+      int h = (hash + k * 0x7FEB352D) * 0x846CA68B;
+      return (h ^ (h >>> 15)) & mask;
+    }
+
+  }
+
+}
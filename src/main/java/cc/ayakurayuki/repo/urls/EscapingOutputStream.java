@@ -0,0 +1,100 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * EscapingOutputStream escapes the UTF-8 bytes written to it like
+ * {@link PercentCodec#escape(byte[], Encoding)} does, and writes the ASCII
+ * result to another OutputStream.
+ * <p>
+ * Escaping works on single bytes, so writes can be split anywhere, even inside
+ * a multibyte character. The output is collected in a fixed-size buffer and
+ * handed to the underlying stream whenever it fills up.
+ * <p>
+ * {@link #close()} must be called (or {@link #flush()}, if the underlying stream
+ * has to stay open) to write out the buffered tail.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-15:00
+ */
+public class EscapingOutputStream extends FilterOutputStream {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final Encoding   mode;
+  private final ByteBuffer buf;
+  private       boolean    closed;
+
+  public EscapingOutputStream(OutputStream out, Encoding mode) {
+    this(out, mode, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param size the size of the output buffer, at least 3 bytes
+   */
+  public EscapingOutputStream(OutputStream out, Encoding mode, int size) {
+    super(Objects.requireNonNull(out, "out"));
+    if (size < 3) {
+      throw new IllegalArgumentException("buffer size " + size + " is less than 3");
+    }
+    this.mode = Objects.requireNonNull(mode, "mode");
+    this.buf = ByteBuffer.allocate(size);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (buf.remaining() < PercentCodec.escapedLength((byte) b, mode)) {
+      flushBuffer();
+    }
+    PercentCodec.escapeByte(buf, (byte) b, mode);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    ensureOpen();
+    ByteBuffer src = ByteBuffer.wrap(b, off, len);
+    while (!PercentCodec.escape(src, buf, mode)) {
+      flushBuffer();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    flushBuffer();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      flushBuffer();
+    } finally {
+      closed = true;
+      out.close();
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (buf.position() > 0) {
+      out.write(buf.array(), 0, buf.position());
+      buf.clear();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
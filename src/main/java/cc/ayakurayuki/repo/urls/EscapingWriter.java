@@ -0,0 +1,162 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * EscapingWriter escapes the chars written to it like {@link URLs#escapeTo(Appendable, CharSequence, Encoding)}
+ * does, and writes the result to another Writer.
+ * <p>
+ * The escaped text is collected in a fixed-size buffer and handed to the underlying
+ * Writer whenever it fills up, so a large form body can be emitted without holding
+ * it in memory. A high surrogate at the end of one write is kept until the next one,
+ * so a surrogate pair split across writes still encodes as one 4-byte sequence.
+ * <p>
+ * {@link #close()} must be called (or {@link #flush()}, if the underlying Writer
+ * has to stay open) to write out the buffered tail.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-15:00
+ */
+public class EscapingWriter extends Writer {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final Writer   out;
+  private final Encoding mode;
+  private final char[]   buf;
+  private       int      count;
+  private       char     pendingHigh; // 0 when there is none
+  private       boolean  closed;
+
+  public EscapingWriter(Writer out, Encoding mode) {
+    this(out, mode, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param size the size of the output buffer, at least {@link Utf8#MAX_ESCAPED_LENGTH} chars
+   */
+  public EscapingWriter(Writer out, Encoding mode, int size) {
+    super(out);
+    if (size < Utf8.MAX_ESCAPED_LENGTH) {
+      throw new IllegalArgumentException("buffer size " + size + " is less than " + Utf8.MAX_ESCAPED_LENGTH);
+    }
+    this.out = Objects.requireNonNull(out, "out");
+    this.mode = Objects.requireNonNull(mode, "mode");
+    this.buf = new char[size];
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      put((char) c);
+    }
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, cbuf.length);
+    synchronized (lock) {
+      ensureOpen();
+      for (int i = off, end = off + len; i < end; i++) {
+        put(cbuf[i]);
+      }
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, str.length());
+    synchronized (lock) {
+      ensureOpen();
+      for (int i = off, end = off + len; i < end; i++) {
+        put(str.charAt(i));
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      flushBuffer();
+      out.flush();
+    }
+  }
+
+  /**
+   * close writes out the buffered output and closes the underlying Writer.
+   * A high surrogate still waiting for its pair is written as an unpaired one.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      try {
+        if (pendingHigh != 0) {
+          pendingHigh = 0;
+          encode(Utf8.REPLACEMENT);
+        }
+        flushBuffer();
+      } finally {
+        closed = true;
+        out.close();
+      }
+    }
+  }
+
+  private void put(char c) throws IOException {
+    if (pendingHigh != 0) {
+      char high = pendingHigh;
+      pendingHigh = 0;
+      if (Character.isLowSurrogate(c)) {
+        encode(Character.toCodePoint(high, c));
+        return;
+      }
+      encode(Utf8.REPLACEMENT);
+    }
+
+    if (!Chars.shouldEscape(c, mode)) {
+      if (count == buf.length) {
+        flushBuffer();
+      }
+      buf[count++] = c;
+    } else if (c == ' ' && mode == Encoding.QueryComponent) {
+      if (count == buf.length) {
+        flushBuffer();
+      }
+      buf[count++] = '+';
+    } else if (Character.isHighSurrogate(c)) {
+      pendingHigh = c;
+    } else if (Character.isLowSurrogate(c)) {
+      encode(Utf8.REPLACEMENT);
+    } else {
+      encode(c);
+    }
+  }
+
+  private void encode(int cp) throws IOException {
+    if (count + Utf8.MAX_ESCAPED_LENGTH > buf.length) {
+      flushBuffer();
+    }
+    count = Utf8.percentEncode(buf, count, cp);
+  }
+
+  private void flushBuffer() throws IOException {
+    if (count > 0) {
+      out.write(buf, 0, count);
+      count = 0;
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
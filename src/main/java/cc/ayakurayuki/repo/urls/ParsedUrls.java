@@ -0,0 +1,211 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParsedUrls holds the result of parsing many urls at once, see {@link URLs#parseAll(List)}.
+ * <p>
+ * The i-th url is {@link #get(int)}, or null if the i-th input could not be parsed.
+ * The failures are kept apart, in index order, as a compact pair of arrays: the
+ * index of each failed input and its error, the one {@link URLs#Parse(String)} returns.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-21:50
+ */
+public final class ParsedUrls {
+
+  private static final int[]       NO_INDEXES = new int[0];
+  private static final Exception[] NO_ERRORS  = new Exception[0];
+
+  private final URL[]       urls;
+  private final int[]       errorIndexes;
+  private final Exception[] errors;
+
+  ParsedUrls(URL[] urls, int[] errorIndexes, Exception[] errors) {
+    this.urls = urls;
+    this.errorIndexes = errorIndexes;
+    this.errors = errors;
+  }
+
+  /**
+   * size returns how many urls were parsed, the failed ones included.
+   */
+  public int size() {
+    return urls.length;
+  }
+
+  /**
+   * get returns the i-th url, or null if it could not be parsed.
+   */
+  public URL get(int i) {
+    return urls[i];
+  }
+
+  /**
+   * urls returns an unmodifiable list of the urls, with null for each one that could not be parsed.
+   */
+  public List<URL> urls() {
+    return Collections.unmodifiableList(Arrays.asList(urls));
+  }
+
+  public boolean hasErrors() {
+    return errors.length > 0;
+  }
+
+  /**
+   * errorCount returns how many urls could not be parsed.
+   */
+  public int errorCount() {
+    return errors.length;
+  }
+
+  /**
+   * errorIndex returns the index of the k-th failed url, the failures are in index order.
+   */
+  public int errorIndex(int k) {
+    return errorIndexes[k];
+  }
+
+  /**
+   * error returns the error of the k-th failed url.
+   */
+  public Exception error(int k) {
+    return errors[k];
+  }
+
+  /**
+   * errorOf returns the error of the i-th url, or null if it was parsed.
+   */
+  public Exception errorOf(int i) {
+    int k = Arrays.binarySearch(errorIndexes, i);
+    return k < 0 ? null : errors[k];
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ParsedUrls(size=%d, errors=%d)", urls.length, errors.length);
+  }
+
+  /**
+   * Parser parses urls one after the other for a single worker. It reuses one
+   * scanner for all of them and records the failures with their index.
+   */
+  static final class Parser {
+
+    private final UrlScanner  scanner      = new UrlScanner();
+    private       int[]       errorIndexes = NO_INDEXES;
+    private       Exception[] errors       = NO_ERRORS;
+    private       int         errorCount;
+
+    /**
+     * parse parses rawURL, the index-th input, and returns its url, or null after recording the error.
+     */
+    URL parse(String rawURL, int index) {
+      if (rawURL == null) {
+        return URL.empty;
+      }
+      URL url = new URL();
+      Exception err = URLs.parse(url, rawURL, 0, rawURL.length(), scanner);
+      if (err != null) {
+        error(index, err);
+        return null;
+      }
+      return url;
+    }
+
+    /**
+     * append takes the errors of other, whose inputs start at offset, after the errors of this parser.
+     */
+    void append(Parser other, int offset) {
+      for (int k = 0; k < other.errorCount; k++) {
+        error(offset + other.errorIndexes[k], other.errors[k]);
+      }
+    }
+
+    ParsedUrls build(URL[] urls) {
+      return new ParsedUrls(urls, Arrays.copyOf(errorIndexes, errorCount), Arrays.copyOf(errors, errorCount));
+    }
+
+    private void error(int index, Exception err) {
+      if (errorCount == errors.length) {
+        int n = Math.max(8, errorCount * 2);
+        errorIndexes = Arrays.copyOf(errorIndexes, n);
+        errors = Arrays.copyOf(errors, n);
+      }
+      errorIndexes[errorCount] = index;
+      errors[errorCount] = err;
+      errorCount++;
+    }
+
+  }
+
+  /**
+   * Accumulator is the mutable container of {@link URLs#toParsedUrls()}, one per worker of a parallel stream.
+   */
+  static final class Accumulator {
+
+    private final ArrayList<URL> urls   = new ArrayList<>();
+    private final Parser         parser = new Parser();
+
+    void add(String rawURL) {
+      urls.add(parser.parse(rawURL, urls.size()));
+    }
+
+    Accumulator combine(Accumulator other) {
+      parser.append(other.parser, urls.size());
+      urls.addAll(other.urls);
+      return this;
+    }
+
+    ParsedUrls finish() {
+      return parser.build(urls.toArray(new URL[0]));
+    }
+
+  }
+
+  /**
+   * Task parses rawURLs[from:to] into urls, splitting the range in halves until it is small enough.
+   * The errors of the two halves are joined left to right, so they stay in index order.
+   */
+  static final class Task extends RecursiveTask<Parser> {
+
+    private static final long serialVersionUID = 6264137805815412617L;
+
+    private final List<String> rawURLs;
+    private final URL[]        urls;
+    private final int          from;
+    private final int          to;
+    private final int          threshold;
+
+    Task(List<String> rawURLs, URL[] urls, int from, int to, int threshold) {
+      this.rawURLs = rawURLs;
+      this.urls = urls;
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+    }
+
+    @Override
+    protected Parser compute() {
+      if (to - from <= threshold) {
+        Parser parser = new Parser();
+        for (int i = from; i < to; i++) {
+          urls[i] = parser.parse(rawURLs.get(i), i);
+        }
+        return parser;
+      }
+      int mid = (from + to) >>> 1;
+      Task right = new Task(rawURLs, urls, mid, to, threshold);
+      right.fork();
+      Parser left = new Task(rawURLs, urls, from, mid, threshold).compute();
+      left.append(right.join(), 0);
+      return left;
+    }
+
+  }
+
+}
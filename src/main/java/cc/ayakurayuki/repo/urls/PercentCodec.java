@@ -0,0 +1,491 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.exception.InvalidHostException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * PercentCodec escapes and unescapes UTF-8 bytes directly, with the same rules
+ * as {@link URLs#escapeTo(StringBuilder, CharSequence, Encoding)} and
+ * {@link URLs#unescape(CharSequence, int, int, Encoding)}, so raw bytes read off
+ * a socket never have to be decoded into Strings first.
+ * <p>
+ * Inputs are scanned 8 bytes at a time: each block is read as a long and the bytes
+ * that may need work ('%', '+' or anything not alphanumeric) are found with word
+ * arithmetic, so runs of plain bytes are skipped without per-byte branches.
+ * Both heap and direct {@link ByteBuffer}s are supported.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-13:20
+ */
+public abstract class PercentCodec {
+
+  private static final VarHandle ARRAY_LONGS  = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private static final long ONES  = 0x0101010101010101L;
+  private static final long LOWS  = 0x7F7F7F7F7F7F7F7FL;
+  private static final long HIGHS = 0x8080808080808080L;
+
+  // -------------------- escape -------------------- //
+
+  /**
+   * escape escapes the bytes of src;
+   * the mode specifies which section of URL is being escaped.
+   * <p>
+   * If nothing needs to be escaped, src itself is returned.
+   */
+  public static byte[] escape(byte[] src, Encoding mode) {
+    return escape(src, 0, src.length, mode);
+  }
+
+  /**
+   * escape escapes src[off:off+len];
+   * the mode specifies which section of URL is being escaped.
+   * <p>
+   * If nothing needs to be escaped and the range covers all of src, src itself is returned.
+   */
+  public static byte[] escape(byte[] src, int off, int len, Encoding mode) {
+    Objects.checkFromIndexSize(off, len, src.length);
+    int end = off + len;
+    int i = skipPlain(src, off, end, mode);
+    if (i == end) {
+      return off == 0 && len == src.length ? src : Arrays.copyOfRange(src, off, end);
+    }
+
+    int size = i - off;
+    for (int j = i; j < end; j++) {
+      size += escapedLength(src[j], mode);
+    }
+
+    byte[] dst = new byte[size];
+    System.arraycopy(src, off, dst, 0, i - off);
+    int w = i - off;
+    while (i < end) {
+      int plain = skipPlain(src, i, end, mode);
+      System.arraycopy(src, i, dst, w, plain - i);
+      w += plain - i;
+      if (plain == end) {
+        break;
+      }
+      w = escapeByte(dst, w, src[plain], mode);
+      i = plain + 1;
+    }
+    return dst;
+  }
+
+  /**
+   * escape escapes the remaining bytes of src into dst;
+   * the mode specifies which section of URL is being escaped.
+   * <p>
+   * It stops early when dst has no room for the next output, leaving src positioned
+   * at the first byte not consumed.
+   *
+   * @return true if all of src was consumed, false if dst filled up first
+   */
+  public static boolean escape(ByteBuffer src, ByteBuffer dst, Encoding mode) {
+    int i = src.position();
+    int end = src.limit();
+    try {
+      while (i < end) {
+        int plain = skipPlain(src, i, Math.min(end, i + dst.remaining()), mode);
+        for (; i < plain; i++) {
+          dst.put(src.get(i));
+        }
+        if (i == end) {
+          return true;
+        }
+        byte b = src.get(i);
+        if (!needsEscape(b, mode)) {
+          // plain byte, but dst is full
+          return false;
+        }
+        if (dst.remaining() < escapedLength(b, mode)) {
+          return false;
+        }
+        escapeByte(dst, b, mode);
+        i++;
+      }
+      return true;
+    } finally {
+      src.position(i);
+    }
+  }
+
+  private static boolean needsEscape(byte b, Encoding mode) {
+    return b < 0 || Chars.shouldEscape((char) b, mode);
+  }
+
+  static int escapedLength(byte b, Encoding mode) {
+    if (!needsEscape(b, mode) || (b == ' ' && mode == Encoding.QueryComponent)) {
+      return 1;
+    }
+    return 3;
+  }
+
+  /**
+   * escapeByte writes b to dst, escaped if the mode requires it.
+   * dst must have room for {@link #escapedLength} bytes.
+   */
+  static void escapeByte(ByteBuffer dst, byte b, Encoding mode) {
+    if (!needsEscape(b, mode)) {
+      dst.put(b);
+    } else if (b == ' ' && mode == Encoding.QueryComponent) {
+      dst.put((byte) '+');
+    } else {
+      dst.put((byte) '%');
+      dst.put((byte) UrlEncoder.upperhex[(b >> 4) & 0xF]);
+      dst.put((byte) UrlEncoder.upperhex[b & 0xF]);
+    }
+  }
+
+  private static int escapeByte(byte[] dst, int w, byte b, Encoding mode) {
+    if (b == ' ' && mode == Encoding.QueryComponent) {
+      dst[w] = '+';
+      return w + 1;
+    }
+    dst[w] = '%';
+    dst[w + 1] = (byte) UrlEncoder.upperhex[(b >> 4) & 0xF];
+    dst[w + 2] = (byte) UrlEncoder.upperhex[b & 0xF];
+    return w + 3;
+  }
+
+  /**
+   * skipPlain returns the index of the first byte in a[i:end] that needs escaping, or end.
+   */
+  private static int skipPlain(byte[] a, int i, int end, Encoding mode) {
+    while (i + Long.BYTES <= end) {
+      long special = ~alnum((long) ARRAY_LONGS.get(a, i)) & HIGHS;
+      if (special == 0) {
+        i += Long.BYTES;
+        continue;
+      }
+      i += Long.numberOfTrailingZeros(special) >>> 3;
+      if (needsEscape(a[i], mode)) {
+        return i;
+      }
+      i++;
+    }
+    while (i < end && !needsEscape(a[i], mode)) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * skipPlain returns the absolute index of the first byte in b[i:end] that needs escaping, or end.
+   */
+  private static int skipPlain(ByteBuffer b, int i, int end, Encoding mode) {
+    while (i + Long.BYTES <= end) {
+      long special = ~alnum((long) BUFFER_LONGS.get(b, i)) & HIGHS;
+      if (special == 0) {
+        i += Long.BYTES;
+        continue;
+      }
+      i += Long.numberOfTrailingZeros(special) >>> 3;
+      if (needsEscape(b.get(i), mode)) {
+        return i;
+      }
+      i++;
+    }
+    while (i < end && !needsEscape(b.get(i), mode)) {
+      i++;
+    }
+    return i;
+  }
+
+  // -------------------- unescape -------------------- //
+
+  /**
+   * unescape unescapes the bytes of src;
+   * the mode specifies which section of URL is being unescaped.
+   * <p>
+   * The result holds the decoded bytes, which are not checked to be valid UTF-8.
+   * If nothing needs to be unescaped, src itself is returned.
+   */
+  public static Result<byte[], Exception> unescape(byte[] src, Encoding mode) {
+    return unescape(src, 0, src.length, mode);
+  }
+
+  /**
+   * unescape unescapes src[off:off+len];
+   * the mode specifies which section of URL is being unescaped.
+   * <p>
+   * The result holds the decoded bytes, which are not checked to be valid UTF-8.
+   * If nothing needs to be unescaped and the range covers all of src, src itself is returned.
+   */
+  public static Result<byte[], Exception> unescape(byte[] src, int off, int len, Encoding mode) {
+    Objects.checkFromIndexSize(off, len, src.length);
+    int end = off + len;
+
+    // count %, check that they're well-formed
+    int n = 0;
+    boolean hasPlus = false;
+    for (int i = off; i < end; ) {
+      i = skipUnescaped(src, i, end, mode);
+      if (i == end) {
+        break;
+      }
+      byte b = src[i];
+      if (b == '%') {
+        RuntimeException err = checkEscape(src, i, end, mode);
+        if (err != null) {
+          return Result.err(new byte[0], err);
+        }
+        n++;
+        i += 3;
+      } else if (b == '+') {
+        hasPlus = mode == Encoding.QueryComponent;
+        i++;
+      } else if (b >= 0 && isInvalidHostByte(b, mode)) {
+        return Result.err(new byte[0], new InvalidHostException(latin1(src, i, i + 1)));
+      } else {
+        i++;
+      }
+    }
+
+    if (n == 0 && !hasPlus) {
+      return Result.ok(off == 0 && len == src.length ? src : Arrays.copyOfRange(src, off, end));
+    }
+
+    byte[] dst = new byte[len - 2 * n];
+    int w = 0;
+    for (int i = off; i < end; ) {
+      int plain = skipUnescaped(src, i, end, null);
+      System.arraycopy(src, i, dst, w, plain - i);
+      w += plain - i;
+      if (plain == end) {
+        break;
+      }
+      i = plain;
+      if (src[i] == '%') {
+        dst[w++] = (byte) (Chars.unhex((char) src[i + 1]) << 4 | Chars.unhex((char) src[i + 2]));
+        i += 3;
+      } else {
+        dst[w++] = mode == Encoding.QueryComponent ? (byte) ' ' : (byte) '+';
+        i++;
+      }
+    }
+    return Result.ok(dst);
+  }
+
+  /**
+   * unescape unescapes the remaining bytes of src into dst;
+   * the mode specifies which section of URL is being unescaped.
+   * <p>
+   * It stops early when dst is full, leaving src positioned at the first byte
+   * not consumed. Callers can tell this apart from completion by checking
+   * {@code src.hasRemaining()}. On error, src is positioned at the offending
+   * byte and everything before it has been written.
+   *
+   * @return null on success, otherwise the error
+   */
+  public static Exception unescape(ByteBuffer src, ByteBuffer dst, Encoding mode) {
+    int i = src.position();
+    int end = src.limit();
+    try {
+      while (i < end && dst.hasRemaining()) {
+        int plain = skipUnescaped(src, i, Math.min(end, i + dst.remaining()), mode);
+        for (; i < plain; i++) {
+          dst.put(src.get(i));
+        }
+        if (i == end || !dst.hasRemaining()) {
+          break;
+        }
+        byte b = src.get(i);
+        if (b == '%') {
+          RuntimeException err = checkEscape(src, i, end, mode);
+          if (err != null) {
+            return err;
+          }
+          dst.put((byte) (Chars.unhex((char) src.get(i + 1)) << 4 | Chars.unhex((char) src.get(i + 2))));
+          i += 3;
+        } else if (b == '+') {
+          dst.put(mode == Encoding.QueryComponent ? (byte) ' ' : (byte) '+');
+          i++;
+        } else if (b >= 0 && isInvalidHostByte(b, mode)) {
+          return new InvalidHostException(String.valueOf((char) b));
+        } else {
+          dst.put(b);
+          i++;
+        }
+      }
+      return null;
+    } finally {
+      src.position(i);
+    }
+  }
+
+  private static boolean isInvalidHostByte(byte b, Encoding mode) {
+    return (mode == Encoding.Host || mode == Encoding.Zone) && Chars.shouldEscape((char) b, mode);
+  }
+
+  /**
+   * checkEscape validates the %-escape at a[i], following the same rules as
+   * {@link URLs#unescape(CharSequence, int, int, Encoding)}.
+   *
+   * @return null if the escape is fine, otherwise the error
+   */
+  private static RuntimeException checkEscape(byte[] a, int i, int end, Encoding mode) {
+    if (i + 2 >= end || Chars.unhex((char) (a[i + 1] & 0xFF)) < 0 || Chars.unhex((char) (a[i + 2] & 0xFF)) < 0) {
+      return new EscapeException(escapeText(a, i, end));
+    }
+    switch (escapedByteError(a[i + 1], a[i + 2], mode)) {
+      case ERR_ESCAPE:
+        return new EscapeException(latin1(a, i, i + 3));
+      case ERR_HOST:
+        return new InvalidHostException(latin1(a, i, i + 3));
+      default:
+        return null;
+    }
+  }
+
+  private static RuntimeException checkEscape(ByteBuffer b, int i, int end, Encoding mode) {
+    if (i + 2 >= end || Chars.unhex((char) (b.get(i + 1) & 0xFF)) < 0 || Chars.unhex((char) (b.get(i + 2) & 0xFF)) < 0) {
+      return new EscapeException(escapeText(b, i, end));
+    }
+    switch (escapedByteError(b.get(i + 1), b.get(i + 2), mode)) {
+      case ERR_ESCAPE:
+        return new EscapeException(latin1(b, i, i + 3));
+      case ERR_HOST:
+        return new InvalidHostException(latin1(b, i, i + 3));
+      default:
+        return null;
+    }
+  }
+
+  private static final int ERR_NONE   = 0;
+  private static final int ERR_ESCAPE = 1;
+  private static final int ERR_HOST   = 2;
+
+  /**
+   * escapedByteError checks the well-formed escape %hi lo against the host and zone rules.
+   */
+  private static int escapedByteError(byte hi, byte lo, Encoding mode) {
+    boolean percent25 = hi == '2' && lo == '5';
+    int v = Chars.unhex((char) hi) << 4 | Chars.unhex((char) lo);
+    // in the host component %-encoding can only be used for non-ASCII bytes,
+    // except %25 which introduces an IPv6 zone
+    if (mode == Encoding.Host && v < 0x80 && !percent25) {
+      return ERR_ESCAPE;
+    }
+    // zone identifiers may only escape bytes that are valid host bytes in their unescaped form
+    if (mode == Encoding.Zone && !percent25 && v != ' ' && Chars.shouldEscape((char) v, Encoding.Host)) {
+      return ERR_HOST;
+    }
+    return ERR_NONE;
+  }
+
+  /**
+   * skipUnescaped returns the index of the first byte in a[i:end] that unescape has
+   * to look at, or end. With a null mode only '%' and '+' stop the scan.
+   */
+  private static int skipUnescaped(byte[] a, int i, int end, Encoding mode) {
+    if (mode == Encoding.Host || mode == Encoding.Zone) {
+      // every byte is validated
+      return i;
+    }
+    while (i + Long.BYTES <= end) {
+      long w = (long) ARRAY_LONGS.get(a, i);
+      long special = equal(w, '%') | equal(w, '+');
+      if (special == 0) {
+        i += Long.BYTES;
+        continue;
+      }
+      return i + (Long.numberOfTrailingZeros(special) >>> 3);
+    }
+    while (i < end && a[i] != '%' && a[i] != '+') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipUnescaped(ByteBuffer b, int i, int end, Encoding mode) {
+    if (mode == Encoding.Host || mode == Encoding.Zone) {
+      // every byte is validated
+      return i;
+    }
+    while (i + Long.BYTES <= end) {
+      long w = (long) BUFFER_LONGS.get(b, i);
+      long special = equal(w, '%') | equal(w, '+');
+      if (special == 0) {
+        i += Long.BYTES;
+        continue;
+      }
+      return i + (Long.numberOfTrailingZeros(special) >>> 3);
+    }
+    while (i < end && b.get(i) != '%' && b.get(i) != '+') {
+      i++;
+    }
+    return i;
+  }
+
+  // -------------------- word tricks -------------------- //
+
+  /**
+   * alnum returns a mask with the high bit set in each byte of w that is an ASCII letter or digit.
+   */
+  static long alnum(long w) {
+    long w7 = w & LOWS;
+    long digits = between(w7, '0', '9');
+    // setting 0x20 folds upper case onto lower case, and nothing else onto a-z
+    long letters = between(w7 | 0x2020202020202020L, 'a', 'z');
+    return (digits | letters) & ~w & HIGHS;
+  }
+
+  /**
+   * between returns a mask with the high bit set in each byte of w7 within [lo, hi].
+   * Every byte of w7 must have its high bit clear, so the additions never carry.
+   */
+  private static long between(long w7, int lo, int hi) {
+    long ge = w7 + ONES * (0x80 - lo);
+    long gt = w7 + ONES * (0x7F - hi);
+    return ge & ~gt & HIGHS;
+  }
+
+  /**
+   * equal returns a mask with the high bit set in each byte of w equal to b.
+   */
+  static long equal(long w, int b) {
+    long x = w ^ (ONES * b);
+    return ~(((x & LOWS) + LOWS) | x | LOWS);
+  }
+
+  /**
+   * escapeText returns the text of the malformed escape at a[i], reported like
+   * URLs.unescape reports it from a String: its first three characters, decoded
+   * from whole UTF-8 sequences. They take at most 9 bytes.
+   */
+  private static String escapeText(byte[] a, int i, int end) {
+    String s = new String(a, i, Math.min(end, i + 9) - i, StandardCharsets.UTF_8);
+    return s.length() > 3 ? s.substring(0, 3) : s;
+  }
+
+  private static String escapeText(ByteBuffer b, int i, int end) {
+    byte[] t = new byte[Math.min(end, i + 9) - i];
+    for (int k = 0; k < t.length; k++) {
+      t[k] = b.get(i + k);
+    }
+    return escapeText(t, 0, t.length);
+  }
+
+  private static String latin1(byte[] a, int from, int to) {
+    return new String(a, from, to - from, StandardCharsets.ISO_8859_1);
+  }
+
+  private static String latin1(ByteBuffer b, int from, int to) {
+    char[] c = new char[to - from];
+    for (int i = from; i < to; i++) {
+      c[i - from] = (char) (b.get(i) & 0xFF);
+    }
+    return new String(c);
+  }
+
+}
@@ -0,0 +1,224 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.util.Arrays;
+
+/**
+ * PercentEncodeSet is a set of characters to percent-encode, compiled into a lookup table.
+ * <p>
+ * Characters outside ASCII are always encoded, as the percent-encoded UTF-8 bytes (or the
+ * bytes of the charset given to {@link UrlEncoder}). Sets are immutable, build new ones with
+ * {@link #builder()} or from an existing set with {@link #toBuilder()}:
+ * <pre>{@code
+ * PercentEncodeSet set = PercentEncodeSet.RFC3986_UNRESERVED.toBuilder().keep("/").build();
+ * String path = URLs.escape("a b/c", set); // "a%20b/c"
+ * }</pre>
+ * Use them with {@link URLs#escape(String, PercentEncodeSet)} and {@link UrlEncoder#encode(String, java.nio.charset.Charset, PercentEncodeSet)}.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-17:20
+ */
+public final class PercentEncodeSet {
+
+  /**
+   * C0_CONTROL encodes the C0 controls and everything above '~', the WHATWG C0 control percent-encode set.
+   */
+  public static final PercentEncodeSet C0_CONTROL = builder().build();
+
+  /**
+   * RFC3986_UNRESERVED encodes everything but the RFC 3986 unreserved characters,
+   * ALPHA / DIGIT / "-" / "." / "_" / "~".
+   */
+  public static final PercentEncodeSet RFC3986_UNRESERVED = builder().encodeAll().keepAlphanumeric().keep("-._~").build();
+
+  /**
+   * OAUTH is the set of OAuth 1.0 (RFC 5849, section 3.6), which is {@link #RFC3986_UNRESERVED}.
+   */
+  public static final PercentEncodeSet OAUTH = RFC3986_UNRESERVED;
+
+  /**
+   * WHATWG_PATH is the WHATWG path percent-encode set.
+   */
+  public static final PercentEncodeSet WHATWG_PATH = builder().encode(" \"#<>?`{}").build();
+
+  /**
+   * WHATWG_USERINFO is the WHATWG userinfo percent-encode set.
+   */
+  public static final PercentEncodeSet WHATWG_USERINFO = WHATWG_PATH.toBuilder().encode("/:;=@[\\]^|").build();
+
+  /**
+   * WHATWG_COMPONENT is the WHATWG component percent-encode set, the one of JavaScript's encodeURIComponent.
+   */
+  public static final PercentEncodeSet WHATWG_COMPONENT = WHATWG_USERINFO.toBuilder().encode("$%&+,").build();
+
+  /**
+   * FORM_URLENCODED is the WHATWG application/x-www-form-urlencoded set, which also turns ' ' into '+'.
+   */
+  public static final PercentEncodeSet FORM_URLENCODED = WHATWG_COMPONENT.toBuilder().encode("!'()~").spaceAsPlus(true).build();
+
+  private final boolean[] encode;
+  private final boolean   spaceAsPlus;
+
+  private PercentEncodeSet(boolean[] encode, boolean spaceAsPlus) {
+    this.encode = encode;
+    this.spaceAsPlus = spaceAsPlus;
+  }
+
+  /**
+   * builder returns a builder that starts from {@link #C0_CONTROL}.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public Builder toBuilder() {
+    Builder builder = new Builder();
+    System.arraycopy(this.encode, 0, builder.encode, 0, 128);
+    builder.spaceAsPlus = this.spaceAsPlus;
+    return builder;
+  }
+
+  /**
+   * shouldEncode reports whether c is percent-encoded. Non-ASCII characters always are.
+   * With {@link #spaceAsPlus()}, ' ' is encoded too, as '+'.
+   */
+  public boolean shouldEncode(char c) {
+    return c >= 128 || encode[c];
+  }
+
+  /**
+   * spaceAsPlus reports whether ' ' is written as '+' instead of %20.
+   */
+  public boolean spaceAsPlus() {
+    return spaceAsPlus;
+  }
+
+  /**
+   * indexOfEncode returns the index of the first character in s[from:to] that
+   * must be encoded, or to if there is none.
+   */
+  int indexOfEncode(CharSequence s, int from, int to) {
+    while (from < to && !shouldEncode(s.charAt(from))) {
+      from++;
+    }
+    return from;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PercentEncodeSet)) {
+      return false;
+    }
+    PercentEncodeSet that = (PercentEncodeSet) o;
+    return spaceAsPlus == that.spaceAsPlus && Arrays.equals(encode, that.encode);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(encode) + Boolean.hashCode(spaceAsPlus);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("PercentEncodeSet(keep=");
+    for (char c = ' '; c < 0x7f; c++) {
+      if (!encode[c]) {
+        sb.append(c);
+      }
+    }
+    return sb.append(", spaceAsPlus=").append(spaceAsPlus).append(')').toString();
+  }
+
+  // -------------------- builder -------------------- //
+
+  public static class Builder {
+
+    private final boolean[] encode = new boolean[128];
+    private       boolean   spaceAsPlus;
+
+    Builder() {
+      for (char c = 0; c < ' '; c++) {
+        encode[c] = true;
+      }
+      encode[0x7f] = true;
+    }
+
+    /**
+     * encode adds every character of chars to the set. They must be ASCII.
+     */
+    public Builder encode(String chars) {
+      return set(chars, true);
+    }
+
+    /**
+     * encode adds the characters in [from, to] to the set. They must be ASCII.
+     */
+    public Builder encode(char from, char to) {
+      return set(from, to, true);
+    }
+
+    /**
+     * encodeAll adds every ASCII character to the set.
+     */
+    public Builder encodeAll() {
+      return set((char) 0, (char) 0x7f, true);
+    }
+
+    /**
+     * keep removes every character of chars from the set. They must be ASCII.
+     */
+    public Builder keep(String chars) {
+      return set(chars, false);
+    }
+
+    /**
+     * keep removes the characters in [from, to] from the set. They must be ASCII.
+     */
+    public Builder keep(char from, char to) {
+      return set(from, to, false);
+    }
+
+    /**
+     * keepAlphanumeric removes ALPHA and DIGIT from the set.
+     */
+    public Builder keepAlphanumeric() {
+      return keep('a', 'z').keep('A', 'Z').keep('0', '9');
+    }
+
+    /**
+     * spaceAsPlus writes ' ' as '+' instead of %20, as HTML forms do.
+     */
+    public Builder spaceAsPlus(boolean spaceAsPlus) {
+      this.spaceAsPlus = spaceAsPlus;
+      return this;
+    }
+
+    public PercentEncodeSet build() {
+      boolean[] table = encode.clone();
+      if (spaceAsPlus) {
+        table[' '] = true;
+      }
+      return new PercentEncodeSet(table, spaceAsPlus);
+    }
+
+    private Builder set(String chars, boolean value) {
+      for (int i = 0; i < chars.length(); i++) {
+        char c = chars.charAt(i);
+        set(c, c, value);
+      }
+      return this;
+    }
+
+    private Builder set(char from, char to, boolean value) {
+      if (from > to || to >= 128) {
+        throw new IllegalArgumentException(String.format("invalid ASCII range [%#x, %#x]", (int) from, (int) to));
+      }
+      Arrays.fill(encode, from, to + 1, value);
+      return this;
+    }
+
+  }
+
+}
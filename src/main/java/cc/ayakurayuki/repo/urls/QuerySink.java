@@ -0,0 +1,21 @@
+package cc.ayakurayuki.repo.urls;
+
+/**
+ * QuerySink takes the settings of a raw query as {@link URLs#splitQuery(CharSequence, int, int, QuerySink)}
+ * finds them, still escaped, as ranges of the query.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/17-10:30
+ */
+@FunctionalInterface
+interface QuerySink {
+
+  /**
+   * setting takes the setting whose key is s[keyStart:keyEnd] and value is s[valueStart:valueEnd].
+   * A setting without an equals sign has an empty value, at its end.
+   *
+   * @return false if the key or the value has an invalid escaping, the setting is then skipped
+   */
+  boolean setting(CharSequence s, int keyStart, int keyEnd, int valueStart, int valueEnd);
+
+}
@@ -0,0 +1,380 @@
+package cc.ayakurayuki.repo.urls;
+
+import static cc.ayakurayuki.repo.urls.UrlView.BRACKET;
+import static cc.ayakurayuki.repo.urls.UrlView.FLAGS;
+import static cc.ayakurayuki.repo.urls.UrlView.FORCE_QUERY;
+import static cc.ayakurayuki.repo.urls.UrlView.FRAGMENT;
+import static cc.ayakurayuki.repo.urls.UrlView.HOST;
+import static cc.ayakurayuki.repo.urls.UrlView.OMIT_HOST;
+import static cc.ayakurayuki.repo.urls.UrlView.OPAQUE;
+import static cc.ayakurayuki.repo.urls.UrlView.PATH;
+import static cc.ayakurayuki.repo.urls.UrlView.PATH_END;
+import static cc.ayakurayuki.repo.urls.UrlView.SCHEME;
+import static cc.ayakurayuki.repo.urls.UrlView.USER;
+import static cc.ayakurayuki.repo.urls.UrlView.ZONE;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map.Entry;
+
+/**
+ * Recycler refills a caller-owned {@link URL} or {@link Values}, see
+ * {@link URLs#parseInto(URL, CharSequence)} and {@link URLs#ParseQueryInto(Values, CharSequence, int, int)}.
+ * <p>
+ * Components are unescaped into reused buffers and compared with what the
+ * target holds. A String, {@link Userinfo} or list the target already has with
+ * the same content is kept, so parsing the same shape of url again and again
+ * allocates nothing new for the parts that repeat.
+ * <p>
+ * There is one recycler per thread, it holds no reference to a target between calls.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-22:20
+ */
+final class Recycler implements QuerySink {
+
+  private static final ThreadLocal<Recycler> RECYCLERS = ThreadLocal.withInitial(Recycler::new);
+
+  final UrlScanner scanner = new UrlScanner();
+
+  private final int[]         offsets = new int[FLAGS + 1];
+  private final StringBuilder a       = new StringBuilder(64);
+  private final StringBuilder b       = new StringBuilder(64);
+
+  // the entries of the Values being refilled, and their keys indexed by hash
+  private Values                 target;
+  private String[]               keys    = new String[8];
+  private List<String>[]         lists   = newLists(8);
+  private ListIterator<String>[] cursors = newCursors(8); // where the next value goes, null until one is added
+  private int[]                  index   = new int[16];   // entry + 1 by open addressing, 0 is a free slot
+  private int                    entries;
+
+  static Recycler get() {
+    return RECYCLERS.get();
+  }
+
+  /**
+   * refill sets every field of url to the url in s that {@link #scanner} has scanned and parse has accepted.
+   */
+  void refill(URL url, CharSequence s) {
+    UrlScanner u = scanner;
+    int[] o = offsets;
+    UrlView.offsets(s, u, o);
+    int flags = o[FLAGS];
+    boolean opaque = (flags & OPAQUE) != 0;
+
+    url.setScheme(scheme(url.getScheme(), s, u.start, u.start + Math.max(o[SCHEME], 0)));
+    url.setOpaque(opaque ? slice(url.getOpaque(), s, o[PATH], o[PATH_END]) : "");
+    url.setUser(o[USER] < 0 ? null : user(url.getUser(), s, o[USER], o[HOST] - 1));
+    url.setHost(o[HOST] < 0 ? "" : host(url.getHost(), s, o[HOST], o[PATH], o[ZONE], o[BRACKET]));
+    url.setOmitHost((flags & OMIT_HOST) != 0);
+    if (opaque) {
+      url.setPath("", "");
+    } else {
+      path(url, s, o[PATH], o[PATH_END]);
+    }
+    url.setForceQuery((flags & FORCE_QUERY) != 0);
+
+    int question = u.query;
+    int queryEnd = u.preEnd();
+    url.setRawQuery(question >= 0 && question + 1 < queryEnd ? slice(url.getRawQuery(), s, question + 1, queryEnd) : "");
+
+    int hash = o[FRAGMENT];
+    if (hash >= 0 && hash + 1 < u.end) {
+      fragment(url, s, hash + 1, u.end);
+    } else {
+      url.setFragment("", "");
+    }
+  }
+
+  /**
+   * refill replaces the contents of m with the query in s[start:end], like ParseQuery reads it.
+   *
+   * @return the first error, or null
+   */
+  Exception refill(Values m, CharSequence s, int start, int end) {
+    snapshot(m);
+    target = m;
+    Exception e = URLs.splitQuery(s, start, end, this);
+    target = null;
+    trim(m);
+    return e;
+  }
+
+  @Override
+  public boolean setting(CharSequence s, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+    a.setLength(0);
+    if (!URLs.appendUnescaped(a, s, keyStart, keyEnd, Encoding.QueryComponent)) {
+      return false;
+    }
+    b.setLength(0);
+    if (!URLs.appendUnescaped(b, s, valueStart, valueEnd, Encoding.QueryComponent)) {
+      return false;
+    }
+    add(target, a, b);
+    return true;
+  }
+
+  private String scheme(String old, CharSequence s, int start, int end) {
+    if (start == end) {
+      return "";
+    }
+    if (old != null && old.length() == end - start) {
+      int i = start;
+      for (; i < end; i++) {
+        char c = s.charAt(i);
+        if (c >= 'A' && c <= 'Z') {
+          c += 'a' - 'A';
+        }
+        if (c != old.charAt(i - start)) {
+          break;
+        }
+      }
+      if (i == end) {
+        return old;
+      }
+    }
+    return Strings.slice(s, start, end).toLowerCase();
+  }
+
+  private Userinfo user(Userinfo old, CharSequence s, int start, int at) {
+    int colon = Strings.indexChar(s, ':', start, at);
+    a.setLength(0);
+    // parse has validated every escape
+    URLs.appendUnescaped(a, s, start, colon < 0 ? at : colon, Encoding.UserPassword);
+    if (colon < 0) {
+      if (old != null && !old.isPasswordSet() && old.username().contentEquals(a)) {
+        return old;
+      }
+      return new Userinfo(a.toString());
+    }
+    b.setLength(0);
+    URLs.appendUnescaped(b, s, colon + 1, at, Encoding.UserPassword);
+    if (old != null && old.isPasswordSet() && old.username().contentEquals(a) && old.password().contentEquals(b)) {
+      return old;
+    }
+    return new Userinfo(a.toString(), b.toString());
+  }
+
+  private String host(String old, CharSequence s, int start, int end, int zone, int bound) {
+    a.setLength(0);
+    if (zone < 0) {
+      URLs.appendUnescaped(a, s, start, end, Encoding.Host);
+    } else {
+      URLs.appendUnescaped(a, s, start, zone, Encoding.Host);
+      URLs.appendUnescaped(a, s, zone, bound, Encoding.Zone);
+      URLs.appendUnescaped(a, s, bound, end, Encoding.Host);
+    }
+    return reuse(old, a);
+  }
+
+  /**
+   * path sets the Path and RawPath of url like {@link URL#setPath(String)} does with s[start:end].
+   */
+  private void path(URL url, CharSequence s, int start, int end) {
+    a.setLength(0);
+    if (!URLs.appendUnescaped(a, s, start, end, Encoding.Path)) {
+      // an invalid escaping leaves the path unset
+      url.setPath("", "");
+      return;
+    }
+    String path = reuse(url.getPath(), a);
+    b.setLength(0);
+    URLs.escapeTo(b, path, Encoding.Path);
+    String rawPath = Strings.regionEquals(b, s, start, end) ? "" : slice(url.getRawPath(), s, start, end);
+    url.setPath(path, rawPath);
+  }
+
+  /**
+   * fragment sets the Fragment and RawFragment of url like {@link URL#setFragment(String)} does with s[start:end].
+   */
+  private void fragment(URL url, CharSequence s, int start, int end) {
+    a.setLength(0);
+    if (!URLs.appendUnescaped(a, s, start, end, Encoding.Fragment)) {
+      url.setFragment("", "");
+      return;
+    }
+    String fragment = reuse(url.getFragment(), a);
+    b.setLength(0);
+    URLs.escapeTo(b, fragment, Encoding.Fragment);
+    String rawFragment = Strings.regionEquals(b, s, start, end) ? "" : slice(url.getRawFragment(), s, start, end);
+    url.setFragment(fragment, rawFragment);
+  }
+
+  /**
+   * snapshot records the entries of m, so their keys, lists and values can be reused.
+   */
+  private void snapshot(Values m) {
+    entries = 0;
+    int n = tableSize(m.size());
+    if (index.length < n || index.length > 8 * n) {
+      index = new int[n];
+    } else {
+      Arrays.fill(index, 0);
+    }
+    for (Entry<String, List<String>> entry : m.entrySet()) {
+      entry(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * add adds value to the values of key in m, reusing what m held before the refill.
+   */
+  private void add(Values m, CharSequence key, CharSequence value) {
+    int k = find(key);
+    if (k < 0) {
+      String newKey = key.toString();
+      m.set(newKey, value.toString());
+      List<String> vs = m.get(newKey);
+      k = entry(newKey, vs);
+      cursors[k] = vs.listIterator(1);
+      return;
+    }
+
+    ListIterator<String> it = cursors[k];
+    if (it == null) {
+      List<String> vs = lists[k];
+      if (vs == null) {
+        vs = new LinkedList<>();
+        m.put(keys[k], vs);
+        lists[k] = vs;
+      }
+      it = vs.listIterator();
+      cursors[k] = it;
+    }
+    if (it.hasNext()) {
+      String old = it.next();
+      if (old == null || !old.contentEquals(value)) {
+        it.set(value.toString());
+      }
+    } else {
+      it.add(value.toString());
+    }
+  }
+
+  /**
+   * trim drops what was not refilled: the values past the new ones, and the keys without any.
+   * It also forgets the entries, so the recycler keeps no reference to m.
+   */
+  private void trim(Values m) {
+    for (int k = 0; k < entries; k++) {
+      ListIterator<String> it = cursors[k];
+      if (it == null) {
+        m.remove(keys[k]);
+      } else {
+        while (it.hasNext()) {
+          it.next();
+          it.remove();
+        }
+      }
+      keys[k] = null;
+      lists[k] = null;
+      cursors[k] = null;
+    }
+    entries = 0;
+  }
+
+  /**
+   * find returns the entry whose key holds the characters of key, or -1.
+   */
+  private int find(CharSequence key) {
+    int mask = index.length - 1;
+    for (int i = spread(hash(key)) & mask; index[i] != 0; i = (i + 1) & mask) {
+      int k = index[i] - 1;
+      if (keys[k].contentEquals(key)) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * entry records the key and list of a new entry, and returns it.
+   */
+  private int entry(String key, List<String> vs) {
+    if (entries == keys.length) {
+      int n = entries * 2;
+      keys = Arrays.copyOf(keys, n);
+      lists = Arrays.copyOf(lists, n);
+      cursors = Arrays.copyOf(cursors, n);
+    }
+    int k = entries++;
+    keys[k] = key;
+    lists[k] = vs;
+    cursors[k] = null;
+    if (key != null) {
+      if (2 * entries > index.length) {
+        rehash(tableSize(entries));
+      }
+      insert(k);
+    }
+    return k;
+  }
+
+  private void rehash(int n) {
+    index = new int[n];
+    for (int k = 0; k < entries; k++) {
+      if (keys[k] != null) {
+        insert(k);
+      }
+    }
+  }
+
+  private void insert(int k) {
+    int mask = index.length - 1;
+    int i = spread(keys[k].hashCode()) & mask;
+    while (index[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    index[i] = k + 1;
+  }
+
+  /**
+   * hash is {@link String#hashCode()} of the characters of s, without making a String of them.
+   */
+  private static int hash(CharSequence s) {
+    int h = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    return h;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * tableSize returns the power of two index size that keeps n keys at most half full.
+   */
+  private static int tableSize(int n) {
+    return Math.max(16, Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1);
+  }
+
+  /**
+   * reuse returns old if it holds the characters of buf, or a new String of them.
+   */
+  private static String reuse(String old, StringBuilder buf) {
+    return old != null && old.contentEquals(buf) ? old : buf.toString();
+  }
+
+  /**
+   * slice returns old if it holds the characters of s[start:end], or a new String of them.
+   */
+  private static String slice(String old, CharSequence s, int start, int end) {
+    return Strings.regionEquals(old, s, start, end) ? old : Strings.slice(s, start, end);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static List<String>[] newLists(int n) {
+    return (List<String>[]) new List[n];
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static ListIterator<String>[] newCursors(int n) {
+    return (ListIterator<String>[]) new ListIterator[n];
+  }
+
+}
@@ -0,0 +1,83 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.util.Objects;
+
+/**
+ * RequestTarget is the request-target of an HTTP request line, classified by
+ * its form (RFC 7230, §5.3) and parsed into a {@link URL}, see
+ * {@link URLs#ParseRequestTarget(byte[], int, int, boolean)}.
+ * <pre>
+ * origin-form    = absolute-path [ "?" query ]   GET /where?q=now HTTP/1.1
+ * absolute-form  = absolute-URI                  GET http://www.example.org/pub/WWW/ HTTP/1.1
+ * authority-form = authority                     CONNECT www.example.com:80 HTTP/1.1
+ * asterisk-form  = "*"                           OPTIONS * HTTP/1.1
+ * </pre>
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-20:55
+ */
+public final class RequestTarget {
+
+  public enum Form {
+
+    /**
+     * An absolute path with an optional query, the URL has a path and a raw query.
+     */
+    Origin,
+
+    /**
+     * An absolute URI, as sent to a proxy, the URL has a scheme.
+     */
+    Absolute,
+
+    /**
+     * The host and port of a CONNECT request, the URL only has a host.
+     */
+    Authority,
+
+    /**
+     * The "*" of a server-wide OPTIONS request, the URL path is "*".
+     */
+    Asterisk
+
+  }
+
+  private final Form form;
+  private final URL  url;
+
+  RequestTarget(Form form, URL url) {
+    this.form = form;
+    this.url = url;
+  }
+
+  public Form form() {
+    return form;
+  }
+
+  public URL url() {
+    return url;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RequestTarget that = (RequestTarget) o;
+    return form == that.form && Objects.equals(url, that.url);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(form, url);
+  }
+
+  @Override
+  public String toString() {
+    return form + "(" + url + ")";
+  }
+
+}
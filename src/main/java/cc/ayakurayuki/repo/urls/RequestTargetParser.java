@@ -0,0 +1,265 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.exception.UrlException;
+import cc.ayakurayuki.repo.urls.exception.UrlSyntaxException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * RequestTargetParser parses the request target of an HTTP request line that
+ * arrives in pieces, such as over a slow connection, with the same rules as
+ * {@link URLs#ParseRequestTarget(byte[], int, int, boolean)}.
+ * <p>
+ * Each piece is scanned once, where the previous one stopped, so the line is
+ * never rescanned from its start. Control characters, a missing scheme, a
+ * target that is not an absolute path or URI, userinfo in a CONNECT target and
+ * a target longer than {@code maxLength} are rejected in the piece they appear in. The rest is
+ * checked when the target is complete, at the SP that ends it.
+ * <pre>{@code
+ * RequestTargetParser parser = new RequestTargetParser(8192);
+ * parser.reset(isConnect);
+ * while (!parser.isDone()) {
+ *   parser.feed(readSomeBytes());
+ * }
+ * Result<RequestTarget, Exception> target = parser.result();
+ * }</pre>
+ * A parser is not thread-safe. It can be reset and reused for the next request of a connection.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-21:20
+ */
+public final class RequestTargetParser {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int        maxLength;
+  private final UrlScanner scanner = new UrlScanner();
+
+  private boolean       connect;
+  private boolean       authorityForm;
+  private byte[]        buf;
+  private AsciiSequence chars;    // all of buf
+  private int           count;
+  private boolean       nonAscii; // some byte is 0x80 or more
+
+  private Result<RequestTarget, Exception> result;
+
+  /**
+   * @param maxLength the longest request target accepted, in bytes
+   */
+  public RequestTargetParser(int maxLength) {
+    if (maxLength < 1) {
+      throw new IllegalArgumentException("max length " + maxLength + " is less than 1");
+    }
+    this.maxLength = maxLength;
+    this.buf = new byte[Math.min(maxLength, INITIAL_CAPACITY)];
+    this.chars = new AsciiSequence(buf, 0, buf.length);
+  }
+
+  /**
+   * reset makes the parser ready for the target of a request that is not a CONNECT.
+   */
+  public void reset() {
+    reset(false);
+  }
+
+  /**
+   * reset makes the parser ready for the target of the next request. Set connect
+   * for a CONNECT request, see {@link URLs#ParseRequestTarget(byte[], int, int, boolean)}.
+   */
+  public void reset(boolean connect) {
+    this.connect = connect;
+    this.authorityForm = false;
+    this.count = 0;
+    this.nonAscii = false;
+    this.result = null;
+  }
+
+  /**
+   * feed reads the request target from b[off:off+len], up to the SP that ends it.
+   * The SP is not consumed, nor is anything once the parser is done.
+   *
+   * @return how many bytes were consumed
+   */
+  public int feed(byte[] b, int off, int len) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (result != null) {
+      return 0;
+    }
+    int end = off + len;
+    int i = off;
+    boolean high = false;
+    for (; i < end; i++) {
+      byte c = b[i];
+      if (c == ' ') {
+        break;
+      }
+      high |= c < 0;
+    }
+    int n = i - off;
+    if (!reserve(n)) {
+      return 0;
+    }
+    System.arraycopy(b, off, buf, count, n);
+    advance(n, high, i < end);
+    return n;
+  }
+
+  /**
+   * feed reads the request target from the remaining bytes of src, like {@link #feed(byte[], int, int)} does.
+   * The position of src is moved past the bytes consumed.
+   *
+   * @return how many bytes were consumed
+   */
+  public int feed(ByteBuffer src) {
+    if (src.hasArray()) {
+      int n = feed(src.array(), src.arrayOffset() + src.position(), src.remaining());
+      src.position(src.position() + n);
+      return n;
+    }
+    if (result != null) {
+      return 0;
+    }
+    int end = src.limit();
+    int i = src.position();
+    boolean high = false;
+    for (; i < end; i++) {
+      byte c = src.get(i);
+      if (c == ' ') {
+        break;
+      }
+      high |= c < 0;
+    }
+    int n = i - src.position();
+    if (!reserve(n)) {
+      return 0;
+    }
+    src.get(buf, count, n);
+    advance(n, high, i < end);
+    return n;
+  }
+
+  /**
+   * finish ends the target at what has been fed so far, for callers that find
+   * its end themselves, and returns the result. If the parser is done already,
+   * it returns the result it has.
+   */
+  public Result<RequestTarget, Exception> finish() {
+    if (result == null) {
+      complete();
+    }
+    return result;
+  }
+
+  /**
+   * isDone reports whether the target is complete or has been rejected.
+   */
+  public boolean isDone() {
+    return result != null;
+  }
+
+  /**
+   * result returns the parsed request target or the error, or null if the parser is not done yet.
+   */
+  public Result<RequestTarget, Exception> result() {
+    return result;
+  }
+
+  /**
+   * length returns how many bytes of the target have been consumed.
+   */
+  public int length() {
+    return count;
+  }
+
+  /**
+   * reserve makes room for n more bytes, or fails the parser if the target would be too long.
+   */
+  private boolean reserve(int n) {
+    int need = count + n;
+    if (need > maxLength) {
+      fail(new UrlSyntaxException("request target longer than " + maxLength + " bytes"));
+      return false;
+    }
+    if (need > buf.length) {
+      buf = Arrays.copyOf(buf, Math.min(maxLength, Math.max(need, buf.length * 2)));
+      chars = new AsciiSequence(buf, 0, buf.length);
+    }
+    return true;
+  }
+
+  private void advance(int n, boolean high, boolean terminated) {
+    if (count == 0 && n > 0) {
+      authorityForm = connect && buf[0] != '/';
+      if (authorityForm) {
+        scanner.beginAuthority(0);
+      } else {
+        scanner.begin(0, false);
+      }
+    }
+    count += n;
+    nonAscii |= high;
+    if (count > 0) {
+      // only the new bytes are scanned
+      scanner.resume(chars, count);
+      Throwable err = check();
+      if (err != null) {
+        fail(err);
+        return;
+      }
+    }
+    if (terminated) {
+      complete();
+    }
+  }
+
+  /**
+   * check returns the error the target will have whatever comes next, or null.
+   */
+  private Throwable check() {
+    if (scanner.ctl >= 0) {
+      return new UrlSyntaxException("invalid control characters in url");
+    }
+    if (authorityForm && scanner.at >= 0) {
+      return new UrlSyntaxException("invalid userinfo in authority-form target");
+    }
+    if (authorityForm || scanner.isScheme() || nonAscii) {
+      // non-ASCII text is only read right once it is decoded, see complete
+      return null;
+    }
+    if (scanner.schemeLength < 0) {
+      return new UrlSyntaxException("missing protocol scheme");
+    }
+    if (scanner.schemeLength == 0 && buf[0] != '/' && (buf[0] != '*' || count > 1)) {
+      return new UrlSyntaxException("invalid uri for request");
+    }
+    return null;
+  }
+
+  private void complete() {
+    if (nonAscii) {
+      // a target is ASCII, this is rare enough to decode it and start over
+      result = URLs.ParseRequestTarget(new String(buf, 0, count, StandardCharsets.UTF_8), connect);
+      return;
+    }
+    if (count == 0) {
+      scanner.begin(0, false);
+    }
+    scanner.finish(count);
+    result = URLs.requestTarget(new AsciiSequence(buf, 0, count), scanner, authorityForm);
+  }
+
+  private void fail(Throwable err) {
+    String raw = new String(buf, 0, count, nonAscii ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    result = Result.err(new UrlException("parse", raw, err));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RequestTargetParser(maxLength=%d, length=%d, done=%s)", maxLength, count, isDone());
+  }
+
+}
@@ -0,0 +1,41 @@
+package cc.ayakurayuki.repo.urls;
+
+/**
+ * Scans holds the linear scans that escaping, unescaping and validation spend
+ * most of their time in.
+ * <p>
+ * This is the Java 11 version, which runs the scalar loops in {@link Chars}.
+ * The multi-release jar carries a Java 17 version of this class under
+ * {@code src/main/java17} that switches long inputs to the Vector API when
+ * the {@code jdk.incubator.vector} module is present at runtime.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-14:10
+ */
+abstract class Scans {
+
+  /**
+   * indexOfEscape returns the index of the first character in s[from:to] that
+   * must be escaped in the given mode, or to if there is none.
+   */
+  static int indexOfEscape(CharSequence s, int from, int to, Encoding mode) {
+    return Chars.indexOfEscape(s, from, to, mode);
+  }
+
+  /**
+   * indexOfCTL returns the index of the first ASCII control character in s[from:to],
+   * or to if there is none.
+   */
+  static int indexOfCTL(CharSequence s, int from, int to) {
+    return Chars.indexOfCTL(s, from, to);
+  }
+
+  /**
+   * indexOfPercent returns the index of the first '%', '+' or non-ASCII character
+   * in s[from:to], or to if there is none.
+   */
+  static int indexOfPercent(CharSequence s, int from, int to) {
+    return Chars.indexOfPercent(s, from, to);
+  }
+
+}
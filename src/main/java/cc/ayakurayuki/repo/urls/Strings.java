@@ -62,13 +62,77 @@ public abstract class Strings extends StringUtils {
    * containsCTLByte reports whether s contains any ASCII control character.
    */
   public static boolean containsCTLByte(String s) {
-    for (int i = 0; i < s.length(); i++) {
-      char b = s.charAt(i);
-      if (b < ' ' || b == 0x7f) {
-        return true;
+    return containsCTLByte(s, 0, s.length());
+  }
+
+  /**
+   * containsCTLByte reports whether s[from:to] contains any ASCII control character.
+   */
+  public static boolean containsCTLByte(CharSequence s, int from, int to) {
+    return Scans.indexOfCTL(s, from, to) < to;
+  }
+
+  /**
+   * slice returns s[from:to] as a String. A String is not copied when the range covers all of it.
+   */
+  public static String slice(CharSequence s, int from, int to) {
+    return s.subSequence(from, to).toString();
+  }
+
+  /**
+   * regionEquals reports whether a holds the same characters as s[from:to].
+   */
+  public static boolean regionEquals(CharSequence a, CharSequence s, int from, int to) {
+    if (a == null || a.length() != to - from) {
+      return false;
+    }
+    for (int i = from; i < to; i++) {
+      if (a.charAt(i - from) != s.charAt(i)) {
+        return false;
       }
     }
-    return false;
+    return true;
+  }
+
+  /**
+   * indexChar returns the index of the first c in s[from:to], or -1 if there is none.
+   */
+  public static int indexChar(CharSequence s, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * lastIndexChar returns the index of the last c in s[from:to], or -1 if there is none.
+   */
+  public static int lastIndexChar(CharSequence s, char c, int from, int to) {
+    for (int i = to - 1; i >= from; i--) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * indexOf returns the index of the first substr fully inside s[from:to], or -1 if there is none.
+   */
+  public static int indexOf(CharSequence s, String substr, int from, int to) {
+    int n = substr.length();
+    outer:
+    for (int i = from; i <= to - n; i++) {
+      for (int j = 0; j < n; j++) {
+        if (s.charAt(i + j) != substr.charAt(j)) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
   }
 
   /**
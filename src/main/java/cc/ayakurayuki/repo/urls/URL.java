@@ -1,9 +1,5 @@
 package cc.ayakurayuki.repo.urls;
 
-import cc.ayakurayuki.repo.urls.wrapper.CutResult;
-import cc.ayakurayuki.repo.urls.wrapper.Pair;
-import cc.ayakurayuki.repo.urls.wrapper.Result;
-import com.google.common.base.MoreObjects;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -93,8 +89,8 @@ public class URL implements Serializable {
    */
   public String escapedPath() {
     if (Strings.isNotEmpty(this.rawPath) && URLs.validEncoded(this.rawPath, Encoding.Path)) {
-      Result<String, Exception> unescapeResult = URLs.unescape(this.rawPath, Encoding.Path);
-      if (!unescapeResult.isErr() && Strings.equals(unescapeResult.ok(), this.path)) {
+      String unescaped = URLs.unescapeOrNull(this.rawPath, 0, this.rawPath.length(), Encoding.Path);
+      if (unescaped != null && Strings.equals(unescaped, this.path)) {
         return this.rawPath;
       }
     }
@@ -116,8 +112,8 @@ public class URL implements Serializable {
    */
   public String escapedFragment() {
     if (Strings.isNotEmpty(this.rawFragment) && URLs.validEncoded(this.rawFragment, Encoding.Fragment)) {
-      Result<String, Exception> unescapeResult = URLs.unescape(this.rawFragment, Encoding.Fragment);
-      if (!unescapeResult.isErr() && Strings.equals(unescapeResult.ok(), this.fragment)) {
+      String unescaped = URLs.unescapeOrNull(this.rawFragment, 0, this.rawFragment.length(), Encoding.Fragment);
+      if (unescaped != null && Strings.equals(unescaped, this.fragment)) {
         return this.rawFragment;
       }
     }
@@ -152,7 +148,7 @@ public class URL implements Serializable {
    */
   @Override
   public String toString() {
-    StringBuilder buf = new StringBuilder();
+    StringBuilder buf = new StringBuilder(Strings.length(this.scheme) + Strings.length(this.host) + Strings.length(this.path) + Strings.length(this.rawQuery) + 16);
     if (Strings.isNotEmpty(this.scheme)) {
       buf.append(this.scheme);
       buf.append(':');
@@ -168,11 +164,11 @@ public class URL implements Serializable {
             buf.append("//");
           }
           if (this.user != null) {
-            buf.append(this.user);
+            this.user.appendTo(buf);
             buf.append('@');
           }
           if (Strings.isNotEmpty(this.host)) {
-            buf.append(URLs.escape(this.host, Encoding.Host));
+            URLs.escapeTo(buf, this.host, Encoding.Host);
           }
         }
       }
@@ -187,9 +183,8 @@ public class URL implements Serializable {
         // it would be mistaken for a scheme name. Such a segment must be
         // preceded by a dot-segment (e.g., "./this:that") to make a relative-path
         // reference.
-        CutResult cutTuple = Strings.cut(path, "/");
-        String segment = cutTuple.getBefore();
-        if (Strings.contains(segment, ":")) {
+        int segmentEnd = Strings.indexChar(path, '/', 0, path.length());
+        if (Strings.indexChar(path, ':', 0, segmentEnd < 0 ? path.length() : segmentEnd) >= 0) {
           buf.append("./");
         }
       }
@@ -315,8 +310,11 @@ public class URL implements Serializable {
    * the square brackets are removed from the result.
    */
   public String hostname() {
-    Pair<String, String> result = URLs.splitHostPort(this.getHost());
-    return MoreObjects.firstNonNull(result.getA(), "");
+    String host = this.getHost();
+    if (host == null) {
+      return "";
+    }
+    return URLs.hostname(host, URLs.indexOfHostEnd(host, 0, host.length()));
   }
 
   /**
@@ -325,8 +323,11 @@ public class URL implements Serializable {
    * If this.host doesn't contain a valid numeric port, returns an empty string.
    */
   public String port() {
-    Pair<String, String> result = URLs.splitHostPort(this.getHost());
-    return MoreObjects.firstNonNull(result.getB(), "");
+    String host = this.getHost();
+    if (host == null) {
+      return "";
+    }
+    return URLs.port(host, URLs.indexOfHostEnd(host, 0, host.length()));
   }
 
   public String username() {
@@ -458,12 +459,12 @@ public class URL implements Serializable {
    * escaping.
    */
   public void setPath(String p) {
-    Result<String, Exception> unescapeResult = URLs.unescape(p, Encoding.Path);
-    if (unescapeResult.isErr()) {
+    String unescaped = URLs.unescapeOrNull(p, 0, p.length(), Encoding.Path);
+    if (unescaped == null) {
       return;
     }
-    this.path = unescapeResult.ok();
-    String escp = URLs.escape(unescapeResult.ok(), Encoding.Path);
+    this.path = unescaped;
+    String escp = URLs.escape(unescaped, Encoding.Path);
     if (Strings.equals(p, escp)) {
       this.setRawPath("");
     } else {
@@ -471,6 +472,14 @@ public class URL implements Serializable {
     }
   }
 
+  /**
+   * setPath sets the Path and RawPath fields as they are. The caller keeps the invariant of {@link #setPath(String)}.
+   */
+  void setPath(String path, String rawPath) {
+    this.path = path;
+    this.rawPath = rawPath;
+  }
+
   public String getRawPath() {
     return rawPath;
   }
@@ -511,12 +520,12 @@ public class URL implements Serializable {
    * setFragment is like setPath but for Fragment/RawFragment.
    */
   public void setFragment(String f) {
-    Result<String, Exception> unescapeResult = URLs.unescape(f, Encoding.Fragment);
-    if (unescapeResult.isErr()) {
+    String unescaped = URLs.unescapeOrNull(f, 0, f.length(), Encoding.Fragment);
+    if (unescaped == null) {
       return;
     }
-    this.fragment = unescapeResult.ok();
-    String escf = URLs.escape(unescapeResult.ok(), Encoding.Fragment);
+    this.fragment = unescaped;
+    String escf = URLs.escape(unescaped, Encoding.Fragment);
     if (Strings.equals(f, escf)) {
       // default encoding is fine
       this.rawFragment = "";
@@ -525,6 +534,14 @@ public class URL implements Serializable {
     }
   }
 
+  /**
+   * setFragment sets the Fragment and RawFragment fields as they are. The caller keeps the invariant of {@link #setFragment(String)}.
+   */
+  void setFragment(String fragment, String rawFragment) {
+    this.fragment = fragment;
+    this.rawFragment = rawFragment;
+  }
+
   public String getRawFragment() {
     return rawFragment;
   }
@@ -3,15 +3,23 @@ package cc.ayakurayuki.repo.urls;
 import cc.ayakurayuki.repo.urls.exception.EscapeException;
 import cc.ayakurayuki.repo.urls.exception.InvalidHostException;
 import cc.ayakurayuki.repo.urls.exception.UrlException;
+import cc.ayakurayuki.repo.urls.exception.UrlSyntaxException;
 import cc.ayakurayuki.repo.urls.wrapper.CutResult;
 import cc.ayakurayuki.repo.urls.wrapper.Pair;
-import cc.ayakurayuki.repo.urls.wrapper.PairEx;
 import cc.ayakurayuki.repo.urls.wrapper.Result;
-import com.google.common.base.MoreObjects;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 
 /**
  * @author Ayakura Yuki
@@ -20,120 +28,20 @@ import java.util.Objects;
 public abstract class URLs {
 
   private static boolean notHex(char c) {
-    return Character.digit(c, 16) == -1;
+    return Chars.unhex(c) == -1;
   }
 
   private static byte unhex(char c) {
-    return (byte) Character.digit(c, 16);
+    return (byte) Chars.unhex(c);
   }
 
+  /**
+   * shouldEscape reports whether c must be escaped in the given section of a URL.
+   * <p>
+   * The rules are compiled into lookup tables, see {@link Chars}.
+   */
   protected static boolean shouldEscape(char c, Encoding mode) {
-    // unreserved characters (alphanum)
-    if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9')) {
-      return false;
-    }
-
-    if (mode == Encoding.Host || mode == Encoding.Zone) {
-      // Host allows
-      //   sub-delims = "!" / "$" / "&" / "'" / "(" / ")" / "*" / "+" / "," / ";" / "="
-      // as part of reg-name.
-      // We add : because we include :port as part of host.
-      // We add [ ] because we include [ipv6]:port as part of host.
-      // We add < > because they're the only characters left that
-      // we could possibly allow, and Parse will reject them if we
-      // escape them (because hosts can't use %-encoding for
-      // ASCII bytes).
-      switch (c) {
-        case '!':
-        case '$':
-        case '&':
-        case '\'':
-        case '(':
-        case ')':
-        case '*':
-        case '+':
-        case ',':
-        case ';':
-        case '=':
-        case ':':
-        case '[':
-        case ']':
-        case '<':
-        case '>':
-        case '"':
-          return false;
-      }
-    }
-
-    switch (c) {
-      // unreserved characters (mark)
-      case '-':
-      case '_':
-      case '.':
-      case '~':
-        return false;
-
-      // reserved characters (reserved)
-      case '$':
-      case '&':
-      case '+':
-      case ',':
-      case '/':
-      case ':':
-      case ';':
-      case '=':
-      case '?':
-      case '@':
-        // Different sections of the URL allow a few of the reserved characters to appear unescaped.
-        switch (mode) {
-          case Path:
-            // The RFC allows : @ & = + $ but saves / ; , for assigning
-            // meaning to individual path segments. This package
-            // only manipulates the path as a whole, so we allow those
-            // last three as well. That leaves only ? to escape.
-            return c == '?';
-
-          case PathSegment:
-            // The RFC allows : @ & = + $ but saves / ; , for assigning
-            // meaning to individual path segments.
-            return c == '/' || c == ';' || c == ',' || c == '?';
-
-          case UserPassword:
-            // The RFC allows ';', ':', '&', '=', '+', '$', and ',' in
-            // userinfo, so we must escape only '@', '/', and '?'.
-            // The parsing of userinfo treats ':' as special so we must escape
-            // that too.
-            return c == '@' || c == '/' || c == '?' || c == ':';
-
-          case QueryComponent:
-            // The RFC reserves (so we must escape) everything.
-            return true;
-
-          case Fragment:
-            // The RFC text is silent but the grammar allows
-            // everything, so escape nothing.
-            return false;
-        }
-    }
-
-    if (mode == Encoding.Fragment) {
-      // RFC 3986 §2.2 allows not escaping sub-delims. A subset of sub-delims are
-      // included in reserved from RFC 2396 §2.2. The remaining sub-delims do not
-      // need to be escaped. To minimize potential breakage, we apply two restrictions:
-      // (1) we always escape sub-delims outside of the fragment, and (2) we always
-      // escape single quote to avoid breaking callers that had previously assumed that
-      // single quotes would be escaped. See issue #19917.
-      switch (c) {
-        case '!':
-        case '(':
-        case ')':
-        case '*':
-          return false;
-      }
-    }
-
-    // Everything else must be escaped.
-    return true;
+    return Chars.shouldEscape(c, mode);
   }
 
   /**
@@ -159,36 +67,340 @@ public abstract class URLs {
     return unescape(s, Encoding.PathSegment);
   }
 
+  // scanEscapes results
+  private static final long SCAN_SIZE      = 0xFFFFFFFFL; // decoded length in UTF-8 bytes
+  private static final long SCAN_NON_ASCII = 1L << 32;    // some decoded byte is >= 0x80
+  private static final long SCAN_CHANGED   = 1L << 33;    // unescaping changes the input
+
+  // scanEscapes error kinds
+  private static final int ERR_ESCAPE      = 0; // malformed or disallowed %-escape
+  private static final int ERR_HOST_ESCAPE = 1; // %-escape of a byte not allowed in a zone
+  private static final int ERR_HOST_CHAR   = 2; // character not allowed in a host
+
   /**
    * unescape unescapes a string;
    * the mode specifies which section of URL string is being unescaped.
    */
   protected static Result<String, Exception> unescape(String s, Encoding mode) {
-    // count %, check that they're well-formed
-    int n = 0;
-    boolean hasPlus = false;
+    return unescape(s, 0, s.length(), mode);
+  }
+
+  /**
+   * unescape unescapes s[start:end];
+   * the mode specifies which section of URL string is being unescaped.
+   * <p>
+   * Only the unescaped result is materialized, so s can be a slice of a larger buffer.
+   */
+  public static Result<String, Exception> unescape(CharSequence s, int start, int end, Encoding mode) {
+    Objects.checkFromToIndex(start, end, s.length());
+    long scan = scanEscapes(s, start, end, mode);
+    if (scan < 0) {
+      return new Result<>("", escapeError(s, end, scan));
+    }
+    return new Result<>(decode(s, start, end, mode, scan), null);
+  }
+
+  /**
+   * unescape unescapes s[start:end] like {@link #unescape(CharSequence, int, int, Encoding)} does,
+   * but decodes the escaped bytes as charset instead of UTF-8.
+   * Unescaped non-ASCII text is kept as it is.
+   * <p>
+   * The decoders are cached per thread, malformed or unmappable bytes are replaced by U+FFFD.
+   */
+  public static Result<String, Exception> unescape(CharSequence s, int start, int end, Encoding mode, Charset charset) {
+    return unescape(s, start, end, mode, charset, false);
+  }
+
+  /**
+   * unescape unescapes s[start:end] like {@link #unescape(CharSequence, int, int, Encoding, Charset)} does.
+   * <p>
+   * With utf8First, each run of escapes that is well-formed UTF-8 is decoded as UTF-8,
+   * and only the other runs as charset. Legacy clients that send charset and newer
+   * ones that send UTF-8 are then both understood, in the same single pass.
+   */
+  public static Result<String, Exception> unescape(CharSequence s, int start, int end, Encoding mode, Charset charset, boolean utf8First) {
+    Objects.checkFromToIndex(start, end, s.length());
+    String unescaped = unescapeOrNull(s, start, end, mode, charset, utf8First);
+    if (unescaped == null) {
+      return new Result<>("", checkEscapes(s, start, end, mode));
+    }
+    return new Result<>(unescaped, null);
+  }
+
+  /**
+   * unescapeOrNull unescapes s[start:end] like {@link #unescape(CharSequence, int, int, Encoding)},
+   * but returns null instead of building the error. {@link #checkEscapes} gives the error afterwards.
+   */
+  static String unescapeOrNull(CharSequence s, int start, int end, Encoding mode) {
+    long scan = scanEscapes(s, start, end, mode);
+    if (scan < 0) {
+      return null;
+    }
+    return decode(s, start, end, mode, scan);
+  }
+
+  /**
+   * unescapeOrNull unescapes s[start:end] like {@link #unescape(CharSequence, int, int, Encoding, Charset, boolean)},
+   * but returns null instead of building the error.
+   */
+  static String unescapeOrNull(CharSequence s, int start, int end, Encoding mode, Charset charset, boolean utf8First) {
+    if (charset == null || charset.equals(StandardCharsets.UTF_8)) {
+      return unescapeOrNull(s, start, end, mode);
+    }
+    long scan = scanEscapes(s, start, end, mode);
+    if (scan < 0) {
+      return null;
+    }
+    if ((scan & SCAN_CHANGED) == 0) {
+      return Strings.slice(s, start, end);
+    }
+    StringBuilder out = new StringBuilder(end - start);
+    // scanEscapes has validated every escape
+    UrlDecoder.decodeTo(out, s, start, end, mode == Encoding.QueryComponent, charset, utf8First);
+    return out.toString();
+  }
+
+  /**
+   * checkEscapes returns the error unescaping s[start:end] in the given mode would give, or null.
+   */
+  static RuntimeException checkEscapes(CharSequence s, int start, int end, Encoding mode) {
+    long scan = scanEscapes(s, start, end, mode);
+    return scan < 0 ? escapeError(s, end, scan) : null;
+  }
+
+  /**
+   * decode unescapes s[start:end], which scanEscapes has already accepted with the given result.
+   */
+  private static String decode(CharSequence s, int start, int end, Encoding mode, long scan) {
+    if ((scan & SCAN_CHANGED) == 0) {
+      return Strings.slice(s, start, end);
+    }
+
+    byte[] buf = new byte[(int) (scan & SCAN_SIZE)];
+    int w = 0;
+    for (int i = start; i < end; ) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '%':
+          buf[w++] = (byte) (unhex(s.charAt(i + 1)) << 4 | unhex(s.charAt(i + 2)));
+          i += 3;
+          break;
+        case '+':
+          if (mode == Encoding.QueryComponent) {
+            buf[w++] = ' ';
+          } else {
+            buf[w++] = '+';
+          }
+          i++;
+          break;
+        default:
+          if (c < 0x80) {
+            buf[w++] = (byte) c;
+            i++;
+          } else {
+            // unescaped non-ASCII text is kept as its UTF-8 bytes
+            int cp = Utf8.codePointAt(s, i, end);
+            w = Utf8.encode(buf, w, cp);
+            i += Character.charCount(cp);
+          }
+          break;
+      }
+    }
+    if ((scan & SCAN_NON_ASCII) == 0) {
+      // every byte is ASCII, which maps 1:1 onto chars
+      return new String(buf, StandardCharsets.ISO_8859_1);
+    }
+    return new String(buf, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * unescapeTo unescapes s like {@link #QueryUnescape(String)} or {@link #PathUnescape(String)} do,
+   * the mode specifies which section of URL string is being unescaped,
+   * and appends the result to dst.
+   *
+   * @return null on success, otherwise the error; nothing is appended on error
+   */
+  public static Exception unescapeTo(StringBuilder dst, CharSequence s, Encoding mode) {
+    try {
+      return unescapeTo((Appendable) dst, s, mode);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * unescapeTo unescapes s like {@link #QueryUnescape(String)} or {@link #PathUnescape(String)} do,
+   * the mode specifies which section of URL string is being unescaped,
+   * and appends the result to dst.
+   *
+   * @return null on success, otherwise the error; nothing is appended on error
+   * @throws IOException if dst does
+   */
+  public static Exception unescapeTo(Appendable dst, CharSequence s, Encoding mode) throws IOException {
+    int end = s.length();
+    long scan = scanEscapes(s, 0, end, mode);
+    if (scan < 0) {
+      return escapeError(s, end, scan);
+    }
+    appendUnescaped(dst, s, 0, end, mode, scan);
+    return null;
+  }
+
+  /**
+   * appendUnescaped unescapes s[start:end] and appends the result to dst, which
+   * is meant to be a reused buffer, so nothing is allocated.
+   *
+   * @return false if s[start:end] has an invalid escaping, {@link #checkEscapes} gives the error;
+   * nothing is appended then
+   */
+  static boolean appendUnescaped(StringBuilder dst, CharSequence s, int start, int end, Encoding mode) {
+    long scan = scanEscapes(s, start, end, mode);
+    if (scan < 0) {
+      return false;
+    }
+    try {
+      appendUnescaped(dst, s, start, end, mode, scan);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return true;
+  }
+
+  /**
+   * appendUnescaped appends s[from:end], which scanEscapes has already accepted with the given result, unescaped to dst.
+   */
+  private static void appendUnescaped(Appendable dst, CharSequence s, int from, int end, Encoding mode, long scan) throws IOException {
+    if ((scan & SCAN_CHANGED) == 0) {
+      dst.append(s, from, end);
+      return;
+    }
+
+    int start = from;
+    for (int i = from; i < end; ) {
+      char c = s.charAt(i);
+      if (c == '%') {
+        dst.append(s, start, i);
+        i = decodeEscapedCodePoint(dst, s, i, end);
+        start = i;
+      } else if (c == '+' && mode == Encoding.QueryComponent) {
+        dst.append(s, start, i);
+        dst.append(' ');
+        start = ++i;
+      } else {
+        i++;
+      }
+    }
+    dst.append(s, start, end);
+  }
+
+  /**
+   * decodeEscapedCodePoint decodes the UTF-8 sequence of %-escapes starting at s[i],
+   * which scanEscapes has already validated, appends it to dst and returns the index
+   * after it. Malformed input is replaced by U+FFFD the same way the JDK's UTF-8
+   * decoder does it, so the result matches {@link #unescape(String, Encoding)}.
+   */
+  private static int decodeEscapedCodePoint(Appendable dst, CharSequence s, int i, int end) throws IOException {
+    int b = unhex(s.charAt(i + 1)) << 4 | unhex(s.charAt(i + 2));
+    i += 3;
+    if (b < 0x80) {
+      dst.append((char) b);
+      return i;
+    }
+
+    int need;
+    int cp;
+    int lo = 0x80;
+    int hi = 0xBF;
+    if (b >= 0xC2 && b <= 0xDF) {
+      need = 1;
+      cp = b & 0x1F;
+    } else if (b >= 0xE0 && b <= 0xEF) {
+      need = 2;
+      cp = b & 0x0F;
+      if (b == 0xE0) {
+        lo = 0xA0; // overlong
+      }
+    } else if (b >= 0xF0 && b <= 0xF4) {
+      need = 3;
+      cp = b & 0x07;
+      if (b == 0xF0) {
+        lo = 0x90; // overlong
+      } else if (b == 0xF4) {
+        hi = 0x8F; // above U+10FFFF
+      }
+    } else {
+      dst.append('\uFFFD');
+      return i;
+    }
+
+    for (; need > 0; need--) {
+      if (i >= end || s.charAt(i) != '%') {
+        break;
+      }
+      int next = unhex(s.charAt(i + 1)) << 4 | unhex(s.charAt(i + 2));
+      if (next < lo || next > hi) {
+        break;
+      }
+      cp = cp << 6 | (next & 0x3F);
+      lo = 0x80;
+      hi = 0xBF;
+      i += 3;
+    }
+    if (need > 0 || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+      // an encoded surrogate is consumed whole, then rejected
+      dst.append('\uFFFD');
+    } else if (Character.isBmpCodePoint(cp)) {
+      dst.append((char) cp);
+    } else {
+      dst.append(Character.highSurrogate(cp));
+      dst.append(Character.lowSurrogate(cp));
+    }
+    return i;
+  }
 
-    for (int i = 0; i < s.length(); ) {
+  /**
+   * scanEscapes counts the %-escapes in s[from:to] and checks that they're
+   * well-formed for the given mode.
+   * <p>
+   * On success, it returns the decoded length in UTF-8 bytes masked by {@link #SCAN_SIZE},
+   * together with the {@link #SCAN_NON_ASCII} and {@link #SCAN_CHANGED} flags.
+   * On failure, it returns a negative value that {@link #escapeError} turns into the exception.
+   */
+  private static long scanEscapes(CharSequence s, int from, int to, Encoding mode) {
+    boolean changed = false;
+    boolean ascii = true;
+    long size = 0;
+
+    boolean host = mode == Encoding.Host || mode == Encoding.Zone;
+    for (int i = from; i < to; ) {
+      if (!host) {
+        // plain ASCII runs only add to the size
+        int j = Scans.indexOfPercent(s, i, to);
+        size += j - i;
+        i = j;
+        if (i == to) {
+          break;
+        }
+      }
       char c = s.charAt(i);
 
       switch (c) {
         case '%':
-          n++;
-          if (i + 2 >= s.length() || notHex(s.charAt(i + 1)) || notHex(s.charAt(i + 2))) {
-            s = s.substring(i);
-            if (s.length() > 3) {
-              s = s.substring(0, 3);
-            }
-            return new Result<>("", new EscapeException(s));
+          changed = true;
+          if (i + 2 >= to || notHex(s.charAt(i + 1)) || notHex(s.charAt(i + 2))) {
+            return scanError(i, ERR_ESCAPE);
           }
+          boolean percent25 = s.charAt(i + 1) == '2' && s.charAt(i + 2) == '5';
           // Per https://tools.ietf.org/html/rfc3986#page-21
           // in the host component %-encoding can only be used
           // for non-ASCII bytes.
           // But https://tools.ietf.org/html/rfc6874#section-2
           // introduces %25 being allowed to escape a percent sign
           // in IPv6 scoped-address literals. Yay.
-          if (mode == Encoding.Host && unhex(s.charAt(i + 1)) < 8 && !Strings.startsWith(s, "%25", i)) {
-            return new Result<>("", new EscapeException(s.substring(i, i + 3)));
+          if (mode == Encoding.Host && unhex(s.charAt(i + 1)) < 8 && !percent25) {
+            return scanError(i, ERR_ESCAPE);
           }
           if (mode == Encoding.Zone) {
             // RFC 6874 says basically "anything goes" for zone identifiers
@@ -199,56 +411,67 @@ public abstract class URLs {
             // to introduce bytes you couldn't just write directly.
             // But Windows puts spaces here! Yay.
             int v = unhex(s.charAt(i + 1)) << 4 | unhex(s.charAt(i + 2));
-            if (!Strings.startsWith(s, "%25", i) && v != ' ' && shouldEscape((char) v, Encoding.Host)) {
-              return new Result<>("", new InvalidHostException(s.substring(i, i + 3)));
+            if (!percent25 && v != ' ' && shouldEscape((char) v, Encoding.Host)) {
+              return scanError(i, ERR_HOST_ESCAPE);
             }
           }
+          if (unhex(s.charAt(i + 1)) >= 8) {
+            ascii = false;
+          }
+          size++;
           i += 3;
           break;
 
         case '+':
-          hasPlus = mode == Encoding.QueryComponent;
+          changed |= mode == Encoding.QueryComponent;
+          size++;
           i++;
           break;
 
         default:
-          if ((mode == Encoding.Host || mode == Encoding.Zone) && c < 0x80 && shouldEscape(c, mode)) {
-            return new Result<>("", new InvalidHostException(s.substring(i, i + 1)));
+          if (host && c < 0x80 && shouldEscape(c, mode)) {
+            return scanError(i, ERR_HOST_CHAR);
+          }
+          if (c < 0x80) {
+            size++;
+            i++;
+          } else {
+            int cp = Utf8.codePointAt(s, i, to);
+            ascii = false;
+            size += Utf8.encodedLength(cp);
+            i += Character.charCount(cp);
           }
-          i++;
           break;
       }
     }
 
-    if (n == 0 && !hasPlus) {
-      return new Result<>(s, null);
+    long scan = size & SCAN_SIZE;
+    if (!ascii) {
+      scan |= SCAN_NON_ASCII;
     }
+    if (changed) {
+      scan |= SCAN_CHANGED;
+    }
+    return scan;
+  }
 
-    try (ByteArrayOutputStream buf = new ByteArrayOutputStream()) {
-
-      for (int i = 0; i < s.length(); i++) {
-        char c = s.charAt(i);
-        switch (c) {
-          case '%':
-            buf.write(unhex(s.charAt(i + 1)) << 4 | unhex(s.charAt(i + 2)));
-            i += 2;
-            break;
-          case '+':
-            if (mode == Encoding.QueryComponent) {
-              buf.write(' ');
-            } else {
-              buf.write('+');
-            }
-            break;
-          default:
-            buf.write(c);
-            break;
-        }
-      }
-      return new Result<>(buf.toString(StandardCharsets.UTF_8), null);
+  private static long scanError(int index, int kind) {
+    return ~((long) index << 2 | kind);
+  }
 
-    } catch (IOException e) {
-      return new Result<>(s, e);
+  /**
+   * escapeError builds the exception for a failed {@link #scanEscapes} over s, which ends at to.
+   */
+  private static RuntimeException escapeError(CharSequence s, int to, long scan) {
+    long err = ~scan;
+    int i = (int) (err >>> 2);
+    switch ((int) (err & 3)) {
+      case ERR_HOST_ESCAPE:
+        return new InvalidHostException(s.subSequence(i, i + 3).toString());
+      case ERR_HOST_CHAR:
+        return new InvalidHostException(s.subSequence(i, i + 1).toString());
+      default:
+        return new EscapeException(s.subSequence(i, Math.min(i + 3, to)).toString());
     }
   }
 
@@ -268,80 +491,208 @@ public abstract class URLs {
     return escape(s, Encoding.PathSegment);
   }
 
+  /**
+   * escape escapes a string;
+   * the mode specifies which section of URL string is being escaped.
+   * <p>
+   * The input is scanned once. If nothing needs to be escaped, s itself is returned.
+   */
   protected static String escape(String s, Encoding mode) {
-    int spaceCount = 0;
-    int hexCount = 0;
+    int n = s.length();
 
-    for (int i = 0; i < s.length(); i++) {
+    // skip the prefix that can be kept as-is
+    int i = Scans.indexOfEscape(s, 0, n, mode);
+    if (i == n) {
+      return s;
+    }
+
+    // Enough room for every remaining character to become a single %XX.
+    // The buffer keeps at least that much room left, and only grows when
+    // a multibyte character needs more.
+    char[] t = new char[i + (n - i) * 3];
+    s.getChars(0, i, t, 0);
+    int w = i;
+
+    while (i < n) {
       char c = s.charAt(i);
-      if (shouldEscape(c, mode)) {
-        if (c == ' ' && mode == Encoding.QueryComponent) {
-          spaceCount++;
-        } else {
-          hexCount++;
+      if (!shouldEscape(c, mode)) {
+        int j = Scans.indexOfEscape(s, i, n, mode);
+        s.getChars(i, j, t, w);
+        w += j - i;
+        i = j;
+      } else if (c == ' ' && mode == Encoding.QueryComponent) {
+        t[w++] = '+';
+        i++;
+      } else if (c < 0x80) {
+        w = Utf8.hex(t, w, c);
+        i++;
+      } else {
+        // walk code points, so a surrogate pair becomes one 4-byte sequence
+        int cp = Utf8.codePointAt(s, i, n);
+        i += Character.charCount(cp);
+        int need = w + Utf8.MAX_ESCAPED_LENGTH + (n - i) * 3;
+        if (need > t.length) {
+          t = Arrays.copyOf(t, Math.max(t.length + (t.length >> 1), need));
         }
+        w = Utf8.percentEncode(t, w, cp);
+      }
+    }
+    return new String(t, 0, w);
+  }
+
+  /**
+   * escapeTo escapes s like {@link #QueryEscape(String)} or {@link #PathEscape(String)} do,
+   * the mode specifies which section of URL string is being escaped,
+   * and appends the result to dst.
+   */
+  public static StringBuilder escapeTo(StringBuilder dst, CharSequence s, Encoding mode) {
+    dst.ensureCapacity(dst.length() + s.length());
+    try {
+      escapeTo((Appendable) dst, s, mode);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return dst;
+  }
+
+  /**
+   * escapeTo escapes s like {@link #QueryEscape(String)} or {@link #PathEscape(String)} do,
+   * the mode specifies which section of URL string is being escaped,
+   * and appends the result to dst.
+   *
+   * @throws IOException if dst does
+   */
+  public static Appendable escapeTo(Appendable dst, CharSequence s, Encoding mode) throws IOException {
+    int n = s.length();
+    int start = 0;
+    for (int i = Scans.indexOfEscape(s, 0, n, mode); i < n; i = Scans.indexOfEscape(s, i, n, mode)) {
+      char c = s.charAt(i);
+      dst.append(s, start, i);
+      if (c == ' ' && mode == Encoding.QueryComponent) {
+        dst.append('+');
+        i++;
+      } else {
+        int cp = Utf8.codePointAt(s, i, n);
+        Utf8.percentEncode(dst, cp);
+        i += Character.charCount(cp);
       }
+      start = i;
     }
+    dst.append(s, start, n);
+    return dst;
+  }
 
-    if (spaceCount == 0 && hexCount == 0) {
+  /**
+   * escape percent-encodes the characters of s in set, non-ASCII ones as UTF-8.
+   * <p>
+   * If nothing needs to be escaped, s itself is returned.
+   */
+  public static String escape(String s, PercentEncodeSet set) {
+    int n = s.length();
+    int i = set.indexOfEncode(s, 0, n);
+    if (i == n) {
       return s;
     }
 
-    if (hexCount == 0) {
-      StringBuilder t = new StringBuilder(s);
-      for (int i = 0; i < t.length(); i++) {
-        if (t.charAt(i) == ' ') {
-          t.setCharAt(i, '+');
+    // same buffer strategy as escape(String, Encoding)
+    char[] t = new char[i + (n - i) * 3];
+    s.getChars(0, i, t, 0);
+    int w = i;
+
+    while (i < n) {
+      char c = s.charAt(i);
+      if (!set.shouldEncode(c)) {
+        int j = set.indexOfEncode(s, i, n);
+        s.getChars(i, j, t, w);
+        w += j - i;
+        i = j;
+      } else if (c == ' ' && set.spaceAsPlus()) {
+        t[w++] = '+';
+        i++;
+      } else if (c < 0x80) {
+        w = Utf8.hex(t, w, c);
+        i++;
+      } else {
+        int cp = Utf8.codePointAt(s, i, n);
+        i += Character.charCount(cp);
+        int need = w + Utf8.MAX_ESCAPED_LENGTH + (n - i) * 3;
+        if (need > t.length) {
+          t = Arrays.copyOf(t, Math.max(t.length + (t.length >> 1), need));
         }
+        w = Utf8.percentEncode(t, w, cp);
       }
-      return t.toString();
     }
+    return new String(t, 0, w);
+  }
 
-    StringBuilder t = new StringBuilder();
-    for (int i = 0; i < s.length(); i++) {
+  /**
+   * escapeTo escapes s like {@link #escape(String, PercentEncodeSet)} does and appends the result to dst.
+   */
+  public static StringBuilder escapeTo(StringBuilder dst, CharSequence s, PercentEncodeSet set) {
+    dst.ensureCapacity(dst.length() + s.length());
+    try {
+      escapeTo((Appendable) dst, s, set);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return dst;
+  }
+
+  /**
+   * escapeTo escapes s like {@link #escape(String, PercentEncodeSet)} does and appends the result to dst.
+   *
+   * @throws IOException if dst does
+   */
+  public static Appendable escapeTo(Appendable dst, CharSequence s, PercentEncodeSet set) throws IOException {
+    int n = s.length();
+    int start = 0;
+    for (int i = set.indexOfEncode(s, 0, n); i < n; i = set.indexOfEncode(s, i, n)) {
       char c = s.charAt(i);
-      if (c == ' ' && mode == Encoding.QueryComponent) {
-        t.append('+');
-      } else if (shouldEscape(c, mode)) {
-        byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
-        for (byte b : bytes) {
-          t.append(String.format("%%%02X", b));
-        }
+      dst.append(s, start, i);
+      if (c == ' ' && set.spaceAsPlus()) {
+        dst.append('+');
+        i++;
       } else {
-        t.append(c);
+        int cp = Utf8.codePointAt(s, i, n);
+        Utf8.percentEncode(dst, cp);
+        i += Character.charCount(cp);
       }
+      start = i;
     }
-    return t.toString();
+    dst.append(s, start, n);
+    return dst;
   }
 
   /**
-   * Maybe rawURL is of the form scheme:path.
+   * schemeLength reports whether s[start:end] is of the form scheme:path,
+   * and how long the scheme is.
    * (Scheme must be [a-zA-Z][a-zA-Z0-9+.-]*)
-   * If so, return scheme, path; else return "", rawURL.
    *
-   * @return pair of scheme and path, {@code pair.a} is scheme, {@code pair.b} is path
+   * @return the length of the scheme, 0 if there is none, or -1 if the colon has no scheme before it
    */
-  private static PairEx<String, String, Exception> getScheme(String rawURL) {
-    for (int i = 0; i < rawURL.length(); i++) {
-      char c = rawURL.charAt(i);
-      if (Character.isLetter(c)) {
+  public static int schemeLength(CharSequence s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (Chars.isSchemeAlpha(c)) {
         // do nothing
-      } else if (Character.isDigit(c) || c == '+' || c == '-' || c == '.') {
-        if (i == 0) {
-          return new PairEx<>("", rawURL, null);
+      } else if (Chars.isSchemeChar(c)) {
+        if (i == start) {
+          return 0;
         }
       } else if (c == ':') {
-        if (i == 0) {
-          return new PairEx<>("", "", new IllegalArgumentException("missing protocol scheme"));
+        if (i == start) {
+          return -1;
         }
-        return new PairEx<>(rawURL.substring(0, i), rawURL.substring(i + 1), null);
+        return i - start;
       } else {
         // we have encountered an invalid character,
         // so there is no valid scheme
-        return new PairEx<>("", rawURL, null);
+        return 0;
       }
     }
-    return new PairEx<>("", rawURL, null);
+    return 0;
   }
 
   /**
@@ -353,26 +704,168 @@ public abstract class URLs {
    * error, due to parsing ambiguities.
    */
   public static Result<URL, Exception> Parse(String rawURL) {
-    // cut off #frag
-    CutResult cutResult = Strings.cut(rawURL, "#");
-    String u = cutResult.getBefore();
-    String frag = cutResult.getAfter();
-    Result<URL, Throwable> result = parse(u, false);
-    if (result.isErr()) {
-      return Result.err(new UrlException("parse", rawURL, result.err()));
-    }
-    URL url = result.ok();
-    if (Strings.isEmpty(frag)) {
-      return Result.ok(url);
+    if (rawURL == null) {
+      return Result.ok(URL.empty);
     }
-    try {
-      url.setFragment(frag);
-    } catch (Exception e) {
-      return Result.err(new UrlException("parse", rawURL, e));
+    return Parse(rawURL, 0, rawURL.length());
+  }
+
+  /**
+   * Parse parses the raw url in s[start:end] into a [URL] structure,
+   * like {@link #Parse(String)} does.
+   * <p>
+   * Only the components of the url are materialized, so s can be a slice
+   * of a larger buffer, such as a log line or a header block.
+   */
+  public static Result<URL, Exception> Parse(CharSequence s, int start, int end) {
+    Objects.checkFromToIndex(start, end, s.length());
+    URL url = new URL();
+    Exception err = parse(url, s, start, end, new UrlScanner());
+    if (err != null) {
+      return Result.err(err);
     }
     return Result.ok(url);
   }
 
+  /**
+   * parse parses s[start:end] into the empty url like {@link #Parse(CharSequence, int, int)} does,
+   * with u as the scanner, so a caller parsing many urls can reuse one.
+   *
+   * @return null on success, otherwise the error
+   */
+  static Exception parse(URL url, CharSequence s, int start, int end, UrlScanner u) {
+    // the boundaries of every component, #frag included, are found in one pass
+    u.scanInto(s, start, end, true);
+    Throwable err = parse(url, s, u, false);
+    if (err != null) {
+      return new UrlException("parse", Strings.slice(s, start, end), err);
+    }
+    if (u.fragment >= 0 && u.fragment + 1 < end) {
+      url.setFragment(Strings.slice(s, u.fragment + 1, end));
+    }
+    return null;
+  }
+
+  /**
+   * parseInto parses rawURL like {@link #Parse(String)} does, into target instead of a new URL.
+   * Every field of target is reset, so it ends up equal to what Parse returns.
+   * <p>
+   * It is meant for a loop that parses one url after the other: the components
+   * target already holds are kept when they have not changed, and the scratch
+   * buffers are reused, so a steady stream of similar urls makes little garbage.
+   * On error, target is left as it was.
+   *
+   * @return null on success, otherwise the error
+   */
+  public static Exception parseInto(URL target, CharSequence rawURL) {
+    return parseInto(target, rawURL, 0, rawURL.length());
+  }
+
+  /**
+   * parseInto parses the raw url in s[start:end] into target, like {@link #parseInto(URL, CharSequence)} does.
+   *
+   * @return null on success, otherwise the error
+   */
+  public static Exception parseInto(URL target, CharSequence s, int start, int end) {
+    Objects.requireNonNull(target);
+    Objects.checkFromToIndex(start, end, s.length());
+    Recycler r = Recycler.get();
+    UrlScanner u = r.scanner;
+    u.scanInto(s, start, end, true);
+    Throwable err = parse(null, s, u, false);
+    if (err != null) {
+      return new UrlException("parse", Strings.slice(s, start, end), err);
+    }
+    r.refill(target, s);
+    return null;
+  }
+
+  /**
+   * isValid reports whether {@link #Parse(String)} accepts rawURL.
+   * <p>
+   * It runs the same checks without building the URL or the error, so a
+   * valid url allocates nothing.
+   */
+  public static boolean isValid(String rawURL) {
+    return rawURL == null || isValid(rawURL, 0, rawURL.length());
+  }
+
+  /**
+   * isValid reports whether {@link #Parse(CharSequence, int, int)} accepts s[start:end].
+   */
+  public static boolean isValid(CharSequence s, int start, int end) {
+    Objects.checkFromToIndex(start, end, s.length());
+    // the fragment is never rejected, see URL#setFragment
+    return parse(null, s, UrlScanner.scan(s, start, end, true), false) == null;
+  }
+
+  /**
+   * parseLazy parses a raw url like {@link #Parse(String)} does, and reports the same errors,
+   * but returns a {@link UrlView} that keeps rawURL and the offsets of its components.
+   * Each component is only unescaped when it is first read.
+   */
+  public static Result<UrlView, Exception> parseLazy(String rawURL) {
+    if (rawURL == null) {
+      rawURL = "";
+    }
+    UrlScanner u = UrlScanner.scan(rawURL, 0, rawURL.length(), true);
+    Throwable err = parse(null, rawURL, u, false);
+    if (err != null) {
+      return Result.err(new UrlException("parse", rawURL, err));
+    }
+    return Result.ok(new UrlView(rawURL, u));
+  }
+
+  // the fewest urls a parseAll worker parses at once
+  private static final int PARSE_ALL_MIN_SPLIT = 1024;
+
+  /**
+   * parseAll parses each of rawURLs like {@link #Parse(String)} does, in parallel
+   * on the common {@link ForkJoinPool}. The i-th url of the result is that of rawURLs.get(i).
+   */
+  public static ParsedUrls parseAll(List<String> rawURLs) {
+    return parseAll(rawURLs, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * parseAll parses each of rawURLs like {@link #Parse(String)} does, in parallel on pool.
+   * <p>
+   * The list is split in ranges of consecutive urls, a few per worker thread, and each
+   * worker reuses its own scanner for its whole range. The urls are written to their
+   * slot of the result, and the errors of the ranges are joined in index order.
+   * A short list is parsed by the calling thread.
+   */
+  public static ParsedUrls parseAll(List<String> rawURLs, ForkJoinPool pool) {
+    List<String> list = rawURLs instanceof RandomAccess ? rawURLs : new ArrayList<>(rawURLs);
+    int n = list.size();
+    URL[] urls = new URL[n];
+    int threshold = Math.max(PARSE_ALL_MIN_SPLIT, n / (pool.getParallelism() * 4) + 1);
+    ParsedUrls.Task task = new ParsedUrls.Task(list, urls, 0, n, threshold);
+    ParsedUrls.Parser parser = n <= threshold ? task.compute() : pool.invoke(task);
+    return parser.build(urls);
+  }
+
+  /**
+   * parseAll parses each url of the stream like {@link #Parse(String)} does, with {@link #toParsedUrls()}.
+   * The stream is made parallel, the i-th url of the result is the i-th of the stream, in encounter order.
+   */
+  public static ParsedUrls parseAll(Stream<String> rawURLs) {
+    return rawURLs.parallel().collect(toParsedUrls());
+  }
+
+  /**
+   * toParsedUrls returns a {@link Collector} that parses each url like {@link #Parse(String)} does.
+   * <p>
+   * In a parallel stream, each worker parses its part of the stream into its own
+   * container, with its own scanner, and the parts are joined in encounter order.
+   */
+  public static Collector<String, ?, ParsedUrls> toParsedUrls() {
+    return Collector.of(ParsedUrls.Accumulator::new,
+                        ParsedUrls.Accumulator::add,
+                        ParsedUrls.Accumulator::combine,
+                        ParsedUrls.Accumulator::finish);
+  }
+
   /**
    * ParseRequestURI parses a raw url into a [URL] structure. It assumes that
    * url was received in an HTTP request, so the url is interpreted
@@ -381,67 +874,202 @@ public abstract class URLs {
    * (Web browsers strip #fragment before sending the URL to a web server.)
    */
   public static Result<URL, Exception> ParseRequestURI(String rawURL) {
-    Result<URL, Throwable> parsed = parse(rawURL, true);
-    if (parsed.isErr()) {
-      return Result.err(new UrlException("parse", rawURL, parsed.err()));
+    if (rawURL == null) {
+      return Result.ok(URL.empty);
     }
-    return Result.ok(parsed.ok());
+    URL url = new URL();
+    Throwable err = parse(url, rawURL, UrlScanner.scan(rawURL, 0, rawURL.length(), false), true);
+    if (err != null) {
+      return Result.err(new UrlException("parse", rawURL, err));
+    }
+    return Result.ok(url);
   }
 
   /**
-   * parse parses a URL from a string in one of two contexts. If
-   * viaRequest is true, the URL is assumed to have arrived via an HTTP request,
-   * in which case only absolute URLs or path-absolute relative URLs are allowed.
-   * If viaRequest is false, all forms of relative URLs are allowed.
+   * ParseRequestURI parses the request target in b[off:off+len], like {@link #ParseRequestURI(String)} does,
+   * without decoding it to a String first. Only the components of the URL are materialized.
+   * <p>
+   * A request target is ASCII, a target with bytes of 0x80 or more is decoded as UTF-8 and parsed as a String.
    */
-  private static Result<URL, Throwable> parse(String rawURL, boolean viaRequest) {
-    String rest = "";
+  public static Result<URL, Exception> ParseRequestURI(byte[] b, int off, int len) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    return parseRequestURI(new AsciiSequence(b, off, len));
+  }
 
-    if (rawURL == null) {
-      return Result.ok(URL.empty);
-    }
+  /**
+   * ParseRequestURI parses the request target between the position and the limit of buf,
+   * like {@link #ParseRequestURI(byte[], int, int)} does. The position of buf is not moved.
+   */
+  public static Result<URL, Exception> ParseRequestURI(ByteBuffer buf) {
+    return parseRequestURI(new AsciiSequence(buf, buf.position(), buf.remaining()));
+  }
 
-    if (Strings.containsCTLByte(rawURL)) {
-      return Result.err(URL.empty, new IllegalArgumentException("invalid control characters in url"));
+  private static Result<URL, Exception> parseRequestURI(AsciiSequence s) {
+    if (s.indexOfNonAscii() >= 0) {
+      return ParseRequestURI(s.decode());
     }
+    URL url = new URL();
+    Throwable err = parse(url, s, UrlScanner.scan(s, 0, s.length(), false), true);
+    if (err != null) {
+      return Result.err(new UrlException("parse", s.toString(), err));
+    }
+    return Result.ok(url);
+  }
+
+  /**
+   * ParseRequestTarget parses the request target in b[off:off+len], without decoding it to a String first,
+   * and reports which of the forms of RFC 7230, §5.3 it has, see {@link RequestTarget}.
+   * <p>
+   * A target like {@code host:443} is both an authority and an absolute URI with
+   * the scheme "host", only the method of the request tells them apart. Set connect
+   * for a CONNECT request: the target is then read as an authority, unless it starts
+   * with '/'. Per RFC 7230, §5.3.3 that authority is host:port without userinfo, a
+   * target with an '@' or a lone '*' is an error. Otherwise the target is read like
+   * {@link #ParseRequestURI(String)} does.
+   */
+  public static Result<RequestTarget, Exception> ParseRequestTarget(byte[] b, int off, int len, boolean connect) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    return parseRequestTarget(new AsciiSequence(b, off, len), connect);
+  }
+
+  /**
+   * ParseRequestTarget parses the request target between the position and the limit of buf,
+   * like {@link #ParseRequestTarget(byte[], int, int, boolean)} does. The position of buf is not moved.
+   */
+  public static Result<RequestTarget, Exception> ParseRequestTarget(ByteBuffer buf, boolean connect) {
+    return parseRequestTarget(new AsciiSequence(buf, buf.position(), buf.remaining()), connect);
+  }
 
-    if (Strings.isEmpty(rawURL) && viaRequest) {
-      return Result.err(URL.empty, new IllegalArgumentException("empty url"));
+  /**
+   * ParseRequestTarget parses the request target s, like {@link #ParseRequestTarget(byte[], int, int, boolean)} does.
+   */
+  public static Result<RequestTarget, Exception> ParseRequestTarget(String s, boolean connect) {
+    return parseRequestTarget(Objects.requireNonNull(s, "s"), connect);
+  }
+
+  private static Result<RequestTarget, Exception> parseRequestTarget(CharSequence s, boolean connect) {
+    if (s instanceof AsciiSequence && ((AsciiSequence) s).indexOfNonAscii() >= 0) {
+      s = ((AsciiSequence) s).decode();
     }
+    int end = s.length();
+    boolean authorityForm = connect && (end == 0 || s.charAt(0) != '/');
+    UrlScanner u = authorityForm ? UrlScanner.scanAuthority(s, 0, end) : UrlScanner.scan(s, 0, end, false);
+    return requestTarget(s, u, authorityForm);
+  }
 
+  /**
+   * requestTarget parses the request target scanned by u, in the authority-form if authorityForm is set.
+   */
+  static Result<RequestTarget, Exception> requestTarget(CharSequence s, UrlScanner u, boolean authorityForm) {
     URL url = new URL();
+    RequestTarget.Form form;
+    Throwable err;
+    if (authorityForm) {
+      form = RequestTarget.Form.Authority;
+      err = parseAuthorityForm(url, s, u);
+    } else {
+      err = parse(url, s, u, true);
+      if (u.end - u.start == 1 && s.charAt(u.start) == '*') {
+        form = RequestTarget.Form.Asterisk;
+      } else if (u.schemeLength > 0) {
+        form = RequestTarget.Form.Absolute;
+      } else {
+        form = RequestTarget.Form.Origin;
+      }
+    }
+    if (err != null) {
+      return Result.err(new UrlException("parse", Strings.slice(s, u.start, u.end), err));
+    }
+    return Result.ok(new RequestTarget(form, url));
+  }
+
+  /**
+   * parseAuthorityForm parses the bare authority scanned by u, host[:port], into url.
+   * It is what the url "http://" + s would give, without the scheme. Userinfo is not
+   * part of the authority-form, see RFC 7230, §5.3.3.
+   *
+   * @return null on success, otherwise the error
+   */
+  private static Throwable parseAuthorityForm(URL url, CharSequence s, UrlScanner u) {
+    if (u.start == u.end) {
+      return new UrlSyntaxException("empty url");
+    }
+    if (u.ctl >= 0) {
+      return new UrlSyntaxException("invalid control characters in url");
+    }
+    if (u.at >= 0) {
+      return new UrlSyntaxException("invalid userinfo in authority-form target");
+    }
+    if (u.end - u.start == 1 && s.charAt(u.start) == '*') {
+      return new UrlSyntaxException("invalid uri for request");
+    }
+    return parseAuthority(url, s, u);
+  }
+
+  /**
+   * parse parses the URL scanned by u, without its fragment, into url in one of two contexts. If
+   * viaRequest is true, the URL is assumed to have arrived via an HTTP request,
+   * in which case only absolute URLs or path-absolute relative URLs are allowed.
+   * If viaRequest is false, all forms of relative URLs are allowed.
+   * <p>
+   * With a null url, s is only validated and none of its components are materialized.
+   *
+   * @return null on success, otherwise the error
+   */
+  private static Throwable parse(URL url, CharSequence s, UrlScanner u, boolean viaRequest) {
+    int start = u.start;
+    int end = u.preEnd();
+    if (u.ctl >= 0) {
+      return new UrlSyntaxException("invalid control characters in url");
+    }
 
-    if (Strings.equals(rawURL, "*")) {
-      url.setPath("*");
-      return Result.ok(url);
+    if (start == end && viaRequest) {
+      return new UrlSyntaxException("empty url");
+    }
+
+    if (end - start == 1 && s.charAt(start) == '*') {
+      if (url != null) {
+        url.setPath("*");
+      }
+      return null;
     }
 
     // split off possible leading "http:", "mailto:", etc.
     // cannot contain escaped characters.
-    PairEx<String, String, Exception> pairEx = getScheme(rawURL);
-    if (pairEx.isErr()) {
-      return Result.err(url, pairEx.getErr());
+    int schemeLength = u.schemeLength;
+    if (schemeLength < 0) {
+      return new UrlSyntaxException("missing protocol scheme");
+    }
+    int rest = u.rest;
+    if (schemeLength > 0 && url != null) {
+      url.setScheme(Strings.slice(s, start, start + schemeLength).toLowerCase());
     }
-    url.setScheme(pairEx.getA().toLowerCase());
-    rest = pairEx.getB();
 
-    if (Strings.endsWith(rest, "?") && Strings.count(rest, "?") == 1) {
-      url.setForceQuery(true);
-      rest = rest.substring(0, rest.length() - 1);
-    } else {
-      CutResult cutResult = Strings.cut(rest, "?");
-      rest = MoreObjects.firstNonNull(cutResult.getBefore(), "");
-      url.setRawQuery(cutResult.getAfter());
+    int restEnd = end;
+    int question = u.query;
+    if (question >= 0) {
+      if (url != null) {
+        if (question == end - 1) {
+          // the only '?' is the last character
+          url.setForceQuery(true);
+        } else {
+          url.setRawQuery(Strings.slice(s, question + 1, end));
+        }
+      }
+      restEnd = question;
     }
 
-    if (!Strings.startsWith(rest, "/")) {
-      if (Strings.isNotEmpty(url.getScheme())) {
+    boolean slash = rest < restEnd && s.charAt(rest) == '/';
+    if (!slash) {
+      if (schemeLength > 0) {
         // We consider rootless paths per RFC 3986 as opaque.
-        url.setOpaque(rest);
-        return Result.ok(url);
+        if (url != null) {
+          url.setOpaque(Strings.slice(s, rest, restEnd));
+        }
+        return null;
       }
       if (viaRequest) {
-        return Result.err(url, new IllegalArgumentException("invalid uri for request"));
+        return new UrlSyntaxException("invalid uri for request");
       }
 
       // Avoid confusion with malformed schemes, like cache_object:foo/bar.
@@ -450,29 +1078,21 @@ public abstract class URLs {
       // RFC 3986, §3.3:
       // In addition, a URI reference (Section 4.1) may be a relative-path reference,
       // in which case the first path segment cannot contain a colon (":") character.
-      CutResult cutResult = Strings.cut(rest, "/");
-      String segment = cutResult.getBefore();
-      if (Strings.contains(segment, ":")) {
+      if (u.colon >= 0) {
         // First path segment has colon. Not allowed in relative URL.
-        return Result.err(url, new IllegalArgumentException("first path segment in URL cannot contain colon"));
+        return new UrlSyntaxException("first path segment in URL cannot contain colon");
       }
     }
 
-    if ((Strings.isNotEmpty(url.getScheme()) || !viaRequest && !Strings.startsWith(rest, "///")) && Strings.startsWith(rest, "//")) {
-      String authority = rest.substring(2);
-      rest = "";
-      int i = authority.indexOf("/");
-      if (i >= 0) {
-        rest = authority.substring(i);
-        authority = authority.substring(0, i);
+    boolean doubleSlash = slash && rest + 1 < restEnd && s.charAt(rest + 1) == '/';
+    boolean tripleSlash = doubleSlash && rest + 2 < restEnd && s.charAt(rest + 2) == '/';
+    if ((schemeLength > 0 || !viaRequest && !tripleSlash) && doubleSlash) {
+      Throwable err = parseAuthority(url, s, u);
+      if (err != null) {
+        return err;
       }
-      PairEx<Userinfo, String, Throwable> parseAuthorityResult = parseAuthority(authority);
-      if (parseAuthorityResult.isErr()) {
-        return Result.err(url, parseAuthorityResult.getErr());
-      }
-      url.setUser(parseAuthorityResult.getA());
-      url.setHost(parseAuthorityResult.getB());
-    } else if (Strings.isNotEmpty(url.getScheme()) && Strings.startsWith(rest, "/")) {
+      rest = u.authorityEnd;
+    } else if (schemeLength > 0 && slash && url != null) {
       // OmitHost is set to true when rawURL has an empty host (authority).
       // See golang.org/issue/46059.
       url.setOmitHost(true);
@@ -482,90 +1102,76 @@ public abstract class URLs {
     // RawPath is a hint of the encoding of Path. We don't want to set it if
     // the default escaping of Path is equivalent, to help make sure that people
     // don't rely on it in general.
-    try {
-      url.setPath(rest);
-    } catch (Exception e) {
-      return Result.err(url, e);
+    // setPath never fails, an invalid escaping just leaves the path unset.
+    if (url != null) {
+      url.setPath(Strings.slice(s, rest, restEnd));
     }
-    return Result.ok(url);
+    return null;
   }
 
-  private static PairEx<Userinfo, String, Throwable> parseAuthority(String authority) {
-    Userinfo user;
-    String host;
-
-    int i = Strings.lastIndexOf(authority, "@");
-    Result<String, Throwable> parseHostResult;
-    if (i < 0) {
-      parseHostResult = parseHost(authority);
-    } else {
-      parseHostResult = parseHost(authority.substring(i + 1));
-    }
-
-    if (parseHostResult.isErr()) {
-      return new PairEx<>(null, "", parseHostResult.err());
+  /**
+   * parseAuthority parses the authority scanned by u into the user and host of url,
+   * or only validates it if url is null.
+   *
+   * @return null on success, otherwise the error
+   */
+  private static Throwable parseAuthority(URL url, CharSequence s, UrlScanner u) {
+    int start = u.authorityStart;
+    int i = u.at;
+    Throwable err = parseHost(url, s, u, u.hostStart(), u.authorityEnd);
+    if (err != null) {
+      return err;
     }
-
-    host = parseHostResult.ok();
     if (i < 0) {
-      return new PairEx<>(null, host, null);
+      return null;
     }
 
-    String userinfo = authority.substring(0, i);
-    if (!validUserinfo(userinfo)) {
-      return new PairEx<>(null, "", new IllegalArgumentException("invalid userinfo"));
+    if (!validUserinfo(s, start, i)) {
+      return new UrlSyntaxException("invalid userinfo");
     }
 
-    if (!Strings.contains(userinfo, ":")) {
-
-      Result<String, Exception> unescapeResult = unescape(userinfo, Encoding.UserPassword);
-      if (unescapeResult.isErr()) {
-        return new PairEx<>(null, "", unescapeResult.err());
-      }
-      userinfo = unescapeResult.ok();
-      user = new Userinfo(userinfo);
-
-    } else {
-
-      CutResult cutResult = Strings.cut(userinfo, ":");
-      String username = MoreObjects.firstNonNull(cutResult.getBefore(), "");
-      String password = cutResult.getAfter();
-
-      Result<String, Exception> unescapeResult = unescape(username, Encoding.UserPassword);
-      if (unescapeResult.isErr()) {
-        return new PairEx<>(null, "", unescapeResult.err());
-      }
-      username = unescapeResult.ok();
-
-      unescapeResult = unescape(password, Encoding.UserPassword);
-      if (unescapeResult.isErr()) {
-        return new PairEx<>(null, "", unescapeResult.err());
+    int colon = Strings.indexChar(s, ':', start, i);
+    int usernameEnd = colon < 0 ? i : colon;
+    String username = unescapeOrNull(s, start, usernameEnd, Encoding.UserPassword);
+    if (username == null) {
+      return checkEscapes(s, start, usernameEnd, Encoding.UserPassword);
+    }
+    if (colon < 0) {
+      if (url != null) {
+        url.setUser(new Userinfo(username));
       }
-      password = unescapeResult.ok();
-
-      user = new Userinfo(username, password);
-
+      return null;
     }
 
-    return new PairEx<>(user, host, null);
+    String password = unescapeOrNull(s, colon + 1, i, Encoding.UserPassword);
+    if (password == null) {
+      return checkEscapes(s, colon + 1, i, Encoding.UserPassword);
+    }
+    if (url != null) {
+      url.setUser(new Userinfo(username, password));
+    }
+    return null;
   }
 
   /**
-   * parseHost parses host as an authority without user information. That is, as host[:port].
+   * parseHost parses s[start:end] as an authority without user information. That is, as host[:port].
+   * The delimiters in it come from u.
+   * On success the host of url is set, unless url is null.
+   *
+   * @return null on success, otherwise the error
    */
-  private static Result<String, Throwable> parseHost(String host) {
+  private static Throwable parseHost(URL url, CharSequence s, UrlScanner u, int start, int end) {
     int bound;
 
-    if (Strings.startsWith(host, "[")) {
+    if (start < end && s.charAt(start) == '[') {
       // Parse an IP-Literal in RFC 3986 and RFC 6874.
       // E.g., "[fe80::1]", "[fe80::1%25en0]", "[fe80::1]:80".
-      bound = Strings.lastIndexOf(host, "]");
+      bound = u.bracket;
       if (bound < 0) {
-        return Result.err("", new IllegalArgumentException("missing ']' in host"));
+        return new UrlSyntaxException("missing ']' in host");
       }
-      String colonPort = host.substring(bound + 1);
-      if (!validOptionalPort(colonPort)) {
-        return Result.err("", new IllegalArgumentException(String.format("invalid port %s after host", colonPort)));
+      if (!validOptionalPort(s, bound + 1, end)) {
+        return new UrlSyntaxException("invalid port " + s.subSequence(bound + 1, end) + " after host");
       }
 
       // RFC 6874 defines that %25 (%-encoded percent) introduces
@@ -574,40 +1180,51 @@ public abstract class URLs {
       // can only %-encode non-ASCII bytes.
       // We do impose some restrictions on the zone, to avoid stupidity
       // like newlines.
-      int zone = Strings.indexOf(host.substring(0, bound), "%25");
+      int zone = u.zone < bound ? u.zone : -1;
       if (zone >= 0) {
-        Result<String, Exception> unescapeResult = unescape(host.substring(0, zone), Encoding.Host);
-        if (unescapeResult.isErr()) {
-          return Result.err("", unescapeResult.err());
+        RuntimeException err = checkEscapes(s, start, zone, Encoding.Host);
+        if (err == null) {
+          err = checkEscapes(s, zone, bound, Encoding.Zone);
         }
-        String host1 = unescapeResult.ok();
-
-        unescapeResult = unescape(host.substring(zone, bound), Encoding.Zone);
-        if (unescapeResult.isErr()) {
-          return Result.err("", unescapeResult.err());
+        if (err == null) {
+          err = checkEscapes(s, bound, end, Encoding.Host);
         }
-        String host2 = unescapeResult.ok();
-
-        unescapeResult = unescape(host.substring(bound), Encoding.Host);
-        if (unescapeResult.isErr()) {
-          return Result.err("", unescapeResult.err());
+        if (err != null) {
+          return err;
         }
-        String host3 = unescapeResult.ok();
-
-        return Result.ok(host1 + host2 + host3);
+        if (url != null) {
+          url.setHost(host(s, start, end, zone, bound));
+        }
+        return null;
       }
-    } else if ((bound = Strings.lastIndexOf(host, ":")) != -1) {
-      String colonPort = host.substring(bound);
-      if (!validOptionalPort(colonPort)) {
-        return Result.err("", new IllegalArgumentException(String.format("invalid port %s after host", colonPort)));
+    } else if ((bound = u.hostColon) != -1) {
+      if (!validOptionalPort(s, bound, end)) {
+        return new UrlSyntaxException("invalid port " + s.subSequence(bound, end) + " after host");
       }
     }
 
-    Result<String, Exception> unescapeResult = unescape(host, Encoding.Host);
-    if (unescapeResult.isErr()) {
-      return Result.err("", unescapeResult.err());
+    if (url == null) {
+      return checkEscapes(s, start, end, Encoding.Host);
+    }
+    String host = unescapeOrNull(s, start, end, Encoding.Host);
+    if (host == null) {
+      return checkEscapes(s, start, end, Encoding.Host);
+    }
+    url.setHost(host);
+    return null;
+  }
+
+  /**
+   * host unescapes the host s[start:end], which parseHost has accepted.
+   * zone is where the zone identifier of an IP-literal starts and bound its ']', or -1 if there is none.
+   */
+  static String host(CharSequence s, int start, int end, int zone, int bound) {
+    if (zone < 0) {
+      return unescapeOrNull(s, start, end, Encoding.Host);
     }
-    return Result.ok(unescapeResult.ok());
+    return unescapeOrNull(s, start, zone, Encoding.Host)
+        + unescapeOrNull(s, zone, bound, Encoding.Zone)
+        + unescapeOrNull(s, bound, end, Encoding.Host);
   }
 
   /**
@@ -620,57 +1237,118 @@ public abstract class URLs {
       // RFC 3986, Appendix A.
       // pchar = unreserved / pct-encoded / sub-delims / ":" / "@".
       // shouldEscape is not quite compliant with the RFC,
-      // so we check the sub-delims ourselves and let
-      // shouldEscape handle the others.
-      switch (s.charAt(i)) {
-        case '!':
-        case '$':
-        case '&':
-        case '\'':
-        case '(':
-        case ')':
-        case '*':
-        case '+':
-        case ',':
-        case ';':
-        case '=':
-        case ':':
-        case '@':
-          // ok
-          break;
+      // so the table accepts the sub-delims on top of what
+      // shouldEscape lets through.
+      if (!Chars.validEncoded(s.charAt(i), mode)) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-        case '[':
-        case ']':
-          // ok - not specified in RFC 3986 but left alone by modern browsers
+  /**
+   * ensureEscaped escapes the characters of s that are not validly encoded yet,
+   * and keeps the existing %XX escapes, with their hex digits uppercased.
+   * A '%' that does not start an escape becomes %25.
+   * <p>
+   * What counts as valid is what {@link #validEncoded(String, Encoding)} accepts,
+   * so the result is valid-encoded, and ensureEscaped of the result is the result itself.
+   * The input is scanned once. If it is already canonical, s itself is returned.
+   */
+  public static String ensureEscaped(String s, Encoding mode) {
+    int n = s.length();
+    int i = 0;
+    for (; i < n; i++) {
+      char c = s.charAt(i);
+      if (c == '%') {
+        if (i + 2 >= n || !isUpperHex(s.charAt(i + 1)) || !isUpperHex(s.charAt(i + 2))) {
           break;
+        }
+        i += 2;
+      } else if (!Chars.validEncoded(c, mode)) {
+        break;
+      }
+    }
+    if (i == n) {
+      return s;
+    }
 
-        case '%':
-          // ok - percent encoded, will decode
-          break;
+    // same buffer strategy as escape(String, Encoding)
+    char[] t = new char[i + (n - i) * 3];
+    s.getChars(0, i, t, 0);
+    int w = i;
 
-        default:
-          if (shouldEscape(s.charAt(i), mode)) {
-            return false;
-          }
-          break;
+    while (i < n) {
+      char c = s.charAt(i);
+      if (c == '%') {
+        if (i + 2 < n && isAsciiHex(s.charAt(i + 1)) && isAsciiHex(s.charAt(i + 2))) {
+          t[w++] = '%';
+          t[w++] = upperHex(s.charAt(i + 1));
+          t[w++] = upperHex(s.charAt(i + 2));
+          i += 3;
+        } else {
+          w = Utf8.hex(t, w, '%');
+          i++;
+        }
+      } else if (Chars.validEncoded(c, mode)) {
+        t[w++] = c;
+        i++;
+      } else if (c == ' ' && mode == Encoding.QueryComponent) {
+        t[w++] = '+';
+        i++;
+      } else if (c < 0x80) {
+        w = Utf8.hex(t, w, c);
+        i++;
+      } else {
+        int cp = Utf8.codePointAt(s, i, n);
+        i += Character.charCount(cp);
+        int need = w + Utf8.MAX_ESCAPED_LENGTH + (n - i) * 3;
+        if (need > t.length) {
+          t = Arrays.copyOf(t, Math.max(t.length + (t.length >> 1), need));
+        }
+        w = Utf8.percentEncode(t, w, cp);
       }
     }
-    return true;
+    return new String(t, 0, w);
+  }
+
+  private static boolean isUpperHex(char c) {
+    return ('0' <= c && c <= '9') || ('A' <= c && c <= 'F');
+  }
+
+  /**
+   * isAsciiHex reports whether c is [0-9A-Fa-f]. Unlike {@link Chars#unhex(char)}, it takes no non-ASCII digits.
+   */
+  private static boolean isAsciiHex(char c) {
+    return c < 0x80 && Chars.unhex(c) >= 0;
+  }
+
+  private static char upperHex(char c) {
+    return c >= 'a' ? (char) (c - ('a' - 'A')) : c;
   }
 
   /**
    * validOptionalPort reports whether port is either an empty string or matches /^:\d*$/
    */
   protected static boolean validOptionalPort(String port) {
-    if (Strings.isEmpty(port)) {
+    if (port == null) {
+      return true;
+    }
+    return validOptionalPort(port, 0, port.length());
+  }
+
+  /**
+   * validOptionalPort reports whether s[start:end] is either empty or matches /^:\d*$/
+   */
+  protected static boolean validOptionalPort(CharSequence s, int start, int end) {
+    if (start == end) {
       return true;
     }
-    if (port.charAt(0) != ':') {
+    if (s.charAt(start) != ':') {
       return false;
     }
-    for (int i = 1; i < port.length(); i++) {
-      char c = port.charAt(i);
-      if (!Character.isDigit(c)) {
+    for (int i = start + 1; i < end; i++) {
+      if (!Chars.isDigit(s.charAt(i))) {
         return false;
       }
     }
@@ -692,47 +1370,140 @@ public abstract class URLs {
    * @return parse result of query values and an probably-exist exception
    */
   public static Result<Values, Exception> ParseQuery(String query) {
+    if (query == null) {
+      return new Result<>(new Values(), null);
+    }
+    return ParseQuery(query, 0, query.length());
+  }
+
+  /**
+   * ParseQuery parses the URL-encoded query in s[start:end],
+   * like {@link #ParseQuery(String)} does.
+   * <p>
+   * Only the unescaped keys and values are materialized, so s can be a slice
+   * of a larger buffer.
+   */
+  public static Result<Values, Exception> ParseQuery(CharSequence s, int start, int end) {
+    Objects.checkFromToIndex(start, end, s.length());
     Values m = new Values();
-    Exception e = parseQueryInternal(m, query);
+    Exception e = parseQueryInternal(m, s, start, end, null, false);
     return new Result<>(m, e);
   }
 
-  private static Exception parseQueryInternal(Values m, String query) {
-    Exception e = null;
-    while (Strings.isNotEmpty(query)) {
-      CutResult cutResult = Strings.cut(query, "&");
-      String key = cutResult.getBefore();
-      query = cutResult.getAfter();
-      if (Strings.contains(key, ";")) {
-        e = new UrlException("ParseQuery", "invalid semicolon separator in query");
-        continue;
+  /**
+   * ParseQueryInto parses the URL-encoded query like {@link #ParseQuery(String)} does, into target.
+   * The contents of target are replaced.
+   * <p>
+   * The keys, value lists and values target already holds are kept when they
+   * have not changed, so parsing the queries of similar requests into one
+   * Values makes little garbage.
+   *
+   * @return the first decoding error, or null; the valid settings are in target either way
+   */
+  public static Exception ParseQueryInto(Values target, String query) {
+    if (query == null) {
+      target.clear();
+      return null;
+    }
+    return ParseQueryInto(target, query, 0, query.length());
+  }
+
+  /**
+   * ParseQueryInto parses the URL-encoded query in s[start:end] into target,
+   * like {@link #ParseQueryInto(Values, String)} does.
+   *
+   * @return the first decoding error, or null
+   */
+  public static Exception ParseQueryInto(Values target, CharSequence s, int start, int end) {
+    Objects.requireNonNull(target);
+    Objects.checkFromToIndex(start, end, s.length());
+    return Recycler.get().refill(target, s, start, end);
+  }
+
+  /**
+   * ParseQuery parses the URL-encoded query like {@link #ParseQuery(String)} does,
+   * but decodes the escaped bytes as charset, for clients that send Shift_JIS, EUC-JP, GBK and the like.
+   */
+  public static Result<Values, Exception> ParseQuery(String query, Charset charset) {
+    return ParseQuery(query, charset, false);
+  }
+
+  /**
+   * ParseQuery parses the URL-encoded query like {@link #ParseQuery(String, Charset)} does.
+   * With utf8First, escapes that are well-formed UTF-8 are decoded as UTF-8,
+   * see {@link #unescape(CharSequence, int, int, Encoding, Charset, boolean)}.
+   */
+  public static Result<Values, Exception> ParseQuery(String query, Charset charset, boolean utf8First) {
+    Values m = new Values();
+    if (query == null) {
+      return new Result<>(m, null);
+    }
+    Exception e = parseQueryInternal(m, query, 0, query.length(), charset, utf8First);
+    return new Result<>(m, e);
+  }
+
+  private static Exception parseQueryInternal(Values m, CharSequence s, int start, int end, Charset charset, boolean utf8First) {
+    return splitQuery(s, start, end, (q, keyStart, keyEnd, valueStart, valueEnd) -> {
+      String key = unescapeOrNull(q, keyStart, keyEnd, Encoding.QueryComponent, charset, utf8First);
+      if (key == null) {
+        return false;
       }
-      if (Strings.isEmpty(key)) {
-        continue;
+      String value = unescapeOrNull(q, valueStart, valueEnd, Encoding.QueryComponent, charset, utf8First);
+      if (value == null) {
+        return false;
       }
-      cutResult = Strings.cut(key, "=");
-      key = cutResult.getBefore();
-      String value = cutResult.getAfter();
+      m.add(key, value);
+      return true;
+    });
+  }
 
-      Result<String, Exception> keyUnescapeResult = QueryUnescape(key);
-      if (keyUnescapeResult.isErr()) {
-        if (e == null) {
-          e = keyUnescapeResult.err();
+  /**
+   * splitQuery splits the raw query in s[start:end] into its settings, the way
+   * {@link #ParseQuery(String)} reads them, and hands each one to sink.
+   * <p>
+   * Settings are separated by ampersands. Empty ones are skipped, and so are
+   * those with a semicolon, which are an error.
+   *
+   * @return the first invalid escaping sink reported, or the semicolon error if there is one; or null
+   */
+  static Exception splitQuery(CharSequence s, int start, int end, QuerySink sink) {
+    Exception e = null;
+    Exception semicolon = null;
+    int next;
+    for (int i = start; i < end; i = next) {
+      int keyEnd = Strings.indexChar(s, '&', i, end);
+      if (keyEnd < 0) {
+        keyEnd = end;
+        next = end;
+      } else {
+        next = keyEnd + 1;
+      }
+      if (Strings.indexChar(s, ';', i, keyEnd) >= 0) {
+        // the error is the same for every such key, build it once
+        if (semicolon == null) {
+          semicolon = new UrlException("ParseQuery", "invalid semicolon separator in query");
         }
+        e = semicolon;
+        continue;
+      }
+      if (i == keyEnd) {
         continue;
       }
-      key = keyUnescapeResult.ok();
+      int valueStart = keyEnd;
+      int eq = Strings.indexChar(s, '=', i, keyEnd);
+      if (eq >= 0) {
+        valueStart = eq + 1;
+      } else {
+        eq = keyEnd;
+      }
 
-      Result<String, Exception> valueUnescapeResult = QueryUnescape(value);
-      if (valueUnescapeResult.isErr()) {
+      // the error is only built for the first bad setting
+      if (!sink.setting(s, i, eq, valueStart, keyEnd) && e == null) {
+        e = checkEscapes(s, i, eq, Encoding.QueryComponent);
         if (e == null) {
-          e = valueUnescapeResult.err();
+          e = checkEscapes(s, valueStart, keyEnd, Encoding.QueryComponent);
         }
-        continue;
       }
-      value = valueUnescapeResult.ok();
-
-      m.add(key, value);
     }
     return e;
   }
@@ -817,24 +1588,47 @@ public abstract class URLs {
    * @return a pair of split result, {@code pair.a} is host, {@code pair.b} is port
    */
   static Pair<String, String> splitHostPort(String hostPort) {
-    String host = hostPort;
-    String port = "";
+    if (hostPort == null) {
+      return new Pair<>(null, "");
+    }
+    int hostEnd = indexOfHostEnd(hostPort, 0, hostPort.length());
+    return new Pair<>(hostname(hostPort, hostEnd), port(hostPort, hostEnd));
+  }
 
-    int colon = Strings.lastIndexOf(host, ':');
-    if (colon != -1 && validOptionalPort(host.substring(colon))) {
-      host = hostPort.substring(0, colon);
-      port = hostPort.substring(colon + 1);
+  /**
+   * indexOfHostEnd returns where the host ends in the host[:port] authority s[start:end],
+   * which is the index of the colon before a valid port, or end if there is none.
+   * Like {@link #splitHostPort(String)}, it requires ports to be numeric and
+   * doesn't check the validity of the host.
+   */
+  public static int indexOfHostEnd(CharSequence s, int start, int end) {
+    int colon = Strings.lastIndexChar(s, ':', start, end);
+    if (colon >= 0 && validOptionalPort(s, colon, end)) {
+      return colon;
     }
+    return end;
+  }
 
-    if (Strings.startsWith(host, "[") && Strings.endsWith(host, "]")) {
-      host = host.substring(1, Strings.length(host) - 1);
+  /**
+   * hostname returns the host in hostPort, which ends at hostEnd,
+   * with the square brackets of an IPv6 literal removed.
+   */
+  static String hostname(String hostPort, int hostEnd) {
+    if (hostEnd >= 2 && hostPort.charAt(0) == '[' && hostPort.charAt(hostEnd - 1) == ']') {
+      return hostPort.substring(1, hostEnd - 1);
     }
+    return hostPort.substring(0, hostEnd);
+  }
 
-    return new Pair<>(host, port);
+  /**
+   * port returns the port in hostPort after hostEnd, without the leading colon.
+   */
+  static String port(String hostPort, int hostEnd) {
+    return hostEnd < hostPort.length() ? hostPort.substring(hostEnd + 1) : "";
   }
 
   /**
-   * validUserinfo reports whether s is a valid userinfo string per RFC 3986
+   * validUserinfo reports whether s[start:end] is a valid userinfo string per RFC 3986
    * <p>
    * Section 3.2.1:
    * <p>
@@ -847,33 +1641,10 @@ public abstract class URLs {
    * <p>
    * It doesn't validate pct-encoded. The caller does that via func unescape.
    */
-  private static boolean validUserinfo(String s) {
-    for (char c : s.toCharArray()) {
-      if (Character.isLetterOrDigit(c)) {
-        continue;
-      }
-      switch (c) {
-        case '-':
-        case '.':
-        case '_':
-        case ':':
-        case '~':
-        case '!':
-        case '$':
-        case '&':
-        case '\'':
-        case '(':
-        case ')':
-        case '*':
-        case '+':
-        case ',':
-        case ';':
-        case '=':
-        case '%':
-        case '@':
-          continue;
-        default:
-          return false;
+  private static boolean validUserinfo(CharSequence s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Chars.isUserinfo(s.charAt(i))) {
+        return false;
       }
     }
     return true;
@@ -0,0 +1,162 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.exception.MalformedEscapeException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * UnescapingInputStream unescapes the bytes read from another InputStream as they
+ * flow through, following the rules of {@link PercentCodec#unescape(ByteBuffer, ByteBuffer, Encoding)}.
+ * <p>
+ * Only a fixed-size buffer of encoded input is held. A %-escape split across reads
+ * of the underlying stream is kept until its remaining bytes arrive. A read that
+ * meets a malformed escape returns the bytes decoded before it, and the next read
+ * fails with a {@link MalformedEscapeException} that carries its offset in the
+ * encoded stream.
+ * <p>
+ * The decoded bytes are not checked to be valid UTF-8, use {@link #newReader(InputStream, Encoding)}
+ * to read them as text.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-15:40
+ */
+public class UnescapingInputStream extends InputStream {
+
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final InputStream in;
+  private final Encoding    mode;
+  private final ByteBuffer  buf;    // encoded input, ready for reading
+  private final byte[]      single = new byte[1];
+  private       long        base;   // offset of buf[0] in the encoded stream
+  private       boolean     eof;
+  private       boolean     closed;
+
+  public UnescapingInputStream(InputStream in, Encoding mode) {
+    this(in, mode, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param size the size of the input buffer, at least 3 bytes
+   */
+  public UnescapingInputStream(InputStream in, Encoding mode, int size) {
+    if (size < 3) {
+      throw new IllegalArgumentException("buffer size " + size + " is less than 3");
+    }
+    this.in = Objects.requireNonNull(in, "in");
+    this.mode = Objects.requireNonNull(mode, "mode");
+    this.buf = ByteBuffer.allocate(size).flip();
+  }
+
+  /**
+   * newReader returns a Reader over the unescaped text of in, decoded as UTF-8.
+   * Malformed UTF-8 is replaced by U+FFFD, the same way {@link URLs#unescape(CharSequence, int, int, Encoding)} does it.
+   */
+  public static Reader newReader(InputStream in, Encoding mode) {
+    return new InputStreamReader(new UnescapingInputStream(in, mode), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n;
+    do {
+      n = read(single, 0, 1);
+    } while (n == 0);
+    return n < 0 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    ensureOpen();
+    if (len == 0) {
+      return 0;
+    }
+
+    ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+    while (true) {
+      int end = eof ? buf.limit() : completeEnd();
+      if (buf.position() < end) {
+        int limit = buf.limit();
+        buf.limit(end);
+        Exception err;
+        try {
+          err = PercentCodec.unescape(buf, dst, mode);
+        } finally {
+          buf.limit(limit);
+        }
+        int n = dst.position() - off;
+        if (err != null && n == 0) {
+          throw new MalformedEscapeException(base + buf.position(), (RuntimeException) err);
+        }
+        // buf stays at the malformed escape, so the next read fails on it
+        return n;
+      }
+      if (eof) {
+        return -1;
+      }
+      fill();
+    }
+  }
+
+  /**
+   * available returns how many bytes can be read without blocking, at least.
+   * Every decoded byte takes at most 3 encoded ones.
+   */
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    int end = eof ? buf.limit() : completeEnd();
+    return (end - buf.position() + 2) / 3;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      in.close();
+    }
+  }
+
+  /**
+   * completeEnd returns the end of the buffered input without a trailing,
+   * possibly incomplete %-escape.
+   */
+  private int completeEnd() {
+    int limit = buf.limit();
+    if (limit - 2 >= buf.position() && buf.get(limit - 2) == '%') {
+      return limit - 2;
+    }
+    if (limit - 1 >= buf.position() && buf.get(limit - 1) == '%') {
+      return limit - 1;
+    }
+    return limit;
+  }
+
+  /**
+   * fill keeps the unread input, at most an incomplete escape, and reads more after it.
+   */
+  private void fill() throws IOException {
+    base += buf.position();
+    buf.compact();
+    int n = in.read(buf.array(), buf.position(), buf.remaining());
+    if (n < 0) {
+      eof = true;
+    } else {
+      buf.position(buf.position() + n);
+    }
+    buf.flip();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+package cc.ayakurayuki.repo.urls;
+
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * UrlDecoder decodes RFC 3986 percent-encoding, the inverse of {@link UrlEncoder}.
+ * <p>
+ * Unlike {@link URLs#QueryUnescape(String)}, '+' is left alone, and the escaped
+ * bytes can be in any charset. Each run of consecutive %XX escapes is decoded as
+ * a whole, malformed or unmappable bytes are replaced by the charset's replacement,
+ * usually U+FFFD.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-16:50
+ */
+public abstract class UrlDecoder {
+
+  /**
+   * DECODERS caches one {@link RunDecoder} per thread for the last charset used.
+   */
+  private static final ThreadLocal<RunDecoder> DECODERS = new ThreadLocal<>();
+
+  @Nonnull
+  public static Result<String, Exception> decode(@Nonnull String s) {
+    return decode(s, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * decode decodes the %XX escapes in s as bytes of charset.
+   * <p>
+   * If s has no escapes, s itself is returned.
+   * It returns an {@link EscapeException} if any % is not followed by two hexadecimal digits.
+   * <p>
+   * To decode the query or the path of a URL, use {@link URLs#unescape(CharSequence, int, int, Encoding, Charset)},
+   * which follows the rules of each section.
+   */
+  @Nonnull
+  public static Result<String, Exception> decode(@Nonnull String s, @Nullable Charset charset) {
+    if (charset == null) {
+      charset = StandardCharsets.UTF_8;
+    }
+
+    int n = s.length();
+    int i = s.indexOf('%');
+    if (i < 0) {
+      return Result.ok(s);
+    }
+    if (charset.equals(StandardCharsets.UTF_8)) {
+      // path segment rules are plain RFC 3986 decoding
+      return URLs.unescape(s, 0, n, Encoding.PathSegment);
+    }
+
+    StringBuilder out = new StringBuilder(n);
+    out.append(s, 0, i);
+    int bad = decodeTo(out, s, i, n, false, charset, false);
+    if (bad >= 0) {
+      return new Result<>("", new EscapeException(s.substring(bad, Math.min(bad + 3, n))));
+    }
+    return Result.ok(out.toString());
+  }
+
+  /**
+   * decodeTo decodes the %XX escapes in s[from:to] as bytes of charset and appends the result to out.
+   * <p>
+   * With utf8First, each run of escapes that is valid UTF-8 is decoded as UTF-8
+   * and only the other runs in charset, which tells the two apart in the same pass.
+   *
+   * @param plusAsSpace whether '+' is decoded as ' '
+   * @return the index of a malformed escape, or -1; out is left partly written on error
+   */
+  static int decodeTo(StringBuilder out, CharSequence s, int from, int to, boolean plusAsSpace, Charset charset, boolean utf8First) {
+    RunDecoder decoder = decoder(charset);
+    int i = from;
+    while (i < to) {
+      char c = s.charAt(i);
+      if (c == '+' && plusAsSpace) {
+        out.append(' ');
+        i++;
+        continue;
+      }
+      if (c != '%') {
+        int j = i + 1;
+        while (j < to && s.charAt(j) != '%' && (s.charAt(j) != '+' || !plusAsSpace)) {
+          j++;
+        }
+        out.append(s, i, j);
+        i = j;
+        continue;
+      }
+
+      ByteBuffer bytes = decoder.bytes((to - i) / 3 + 1);
+      for (; i < to && s.charAt(i) == '%'; i += 3) {
+        if (i + 2 >= to || Chars.unhex(s.charAt(i + 1)) < 0 || Chars.unhex(s.charAt(i + 2)) < 0) {
+          return i;
+        }
+        bytes.put((byte) (Chars.unhex(s.charAt(i + 1)) << 4 | Chars.unhex(s.charAt(i + 2))));
+      }
+      if (!utf8First || !appendUtf8(out, bytes)) {
+        out.append(decoder.decode());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * appendUtf8 appends the bytes written to b, if they are well-formed UTF-8.
+   *
+   * @return false, with nothing appended, if they are not
+   */
+  private static boolean appendUtf8(StringBuilder out, ByteBuffer b) {
+    byte[] a = b.array();
+    int n = b.position();
+    int mark = out.length();
+    for (int i = 0; i < n; ) {
+      int b0 = a[i] & 0xFF;
+      if (b0 < 0x80) {
+        out.append((char) b0);
+        i++;
+        continue;
+      }
+
+      int len;
+      int cp;
+      int min;
+      if ((b0 & 0xE0) == 0xC0) {
+        len = 2;
+        cp = b0 & 0x1F;
+        min = 0x80;
+      } else if ((b0 & 0xF0) == 0xE0) {
+        len = 3;
+        cp = b0 & 0x0F;
+        min = 0x800;
+      } else if ((b0 & 0xF8) == 0xF0) {
+        len = 4;
+        cp = b0 & 0x07;
+        min = 0x10000;
+      } else {
+        out.setLength(mark);
+        return false;
+      }
+      if (i + len > n) {
+        out.setLength(mark);
+        return false;
+      }
+      for (int k = 1; k < len; k++) {
+        int bk = a[i + k] & 0xFF;
+        if ((bk & 0xC0) != 0x80) {
+          out.setLength(mark);
+          return false;
+        }
+        cp = cp << 6 | (bk & 0x3F);
+      }
+      // overlong forms, surrogates and values past U+10FFFF are not UTF-8
+      if (cp < min || cp > Character.MAX_CODE_POINT || (Character.MIN_SURROGATE <= cp && cp <= Character.MAX_SURROGATE)) {
+        out.setLength(mark);
+        return false;
+      }
+      out.appendCodePoint(cp);
+      i += len;
+    }
+    return true;
+  }
+
+  /**
+   * decode decodes the %XX escapes in buf[off:off+len] as bytes of charset, in place.
+   * The decoded text starts at buf[off].
+   * <p>
+   * Every supported charset decodes a byte into at most 3 chars, so the output
+   * never overtakes the input. On error, the contents of the range are undefined.
+   *
+   * @return the length of the decoded text, or a negative value {@code ~i} if the
+   * escape at buf[i] is not followed by two hexadecimal digits
+   * @throws IllegalArgumentException if a byte of charset may decode into more than 3 chars
+   */
+  public static int decode(@Nonnull char[] buf, int off, int len, @Nullable Charset charset) {
+    Objects.checkFromIndexSize(off, len, buf.length);
+    if (charset == null) {
+      charset = StandardCharsets.UTF_8;
+    }
+    RunDecoder decoder = decoder(charset);
+    if (decoder.decoder.maxCharsPerByte() > 3) {
+      throw new IllegalArgumentException("charset " + charset + " cannot be decoded in place");
+    }
+
+    int end = off + len;
+    int w = off;
+    for (int r = off; r < end; ) {
+      char c = buf[r];
+      if (c != '%') {
+        buf[w++] = c;
+        r++;
+        continue;
+      }
+
+      ByteBuffer bytes = decoder.bytes((end - r) / 3 + 1);
+      for (; r < end && buf[r] == '%'; r += 3) {
+        if (r + 2 >= end || Chars.unhex(buf[r + 1]) < 0 || Chars.unhex(buf[r + 2]) < 0) {
+          return ~r;
+        }
+        bytes.put((byte) (Chars.unhex(buf[r + 1]) << 4 | Chars.unhex(buf[r + 2])));
+      }
+      CharBuffer chars = decoder.decode();
+      int n = chars.remaining();
+      chars.get(buf, w, n);
+      w += n;
+    }
+    return w - off;
+  }
+
+  private static RunDecoder decoder(Charset charset) {
+    RunDecoder decoder = DECODERS.get();
+    if (decoder == null || !decoder.charset.equals(charset)) {
+      decoder = new RunDecoder(charset);
+      DECODERS.set(decoder);
+    }
+    return decoder;
+  }
+
+  /**
+   * RunDecoder converts runs of escaped bytes to chars with a reusable {@link CharsetDecoder}
+   * and reusable buffers, the mirror image of the encoder {@link UrlEncoder} keeps.
+   * <p>
+   * It is not thread-safe, {@link #DECODERS} keeps one per thread.
+   */
+  private static final class RunDecoder {
+
+    final Charset        charset;
+    final CharsetDecoder decoder;
+    ByteBuffer           in  = ByteBuffer.allocate(64);
+    CharBuffer           out = CharBuffer.allocate(64);
+
+    RunDecoder(Charset charset) {
+      this.charset = charset;
+      this.decoder = charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * bytes returns the cleared input buffer, with room for at least max bytes.
+     */
+    ByteBuffer bytes(int max) {
+      if (in.capacity() < max) {
+        in = ByteBuffer.allocate(Math.max(max, in.capacity() * 2));
+      }
+      return in.clear();
+    }
+
+    /**
+     * decode decodes the bytes put into {@link #bytes(int)} and returns the chars
+     * in a buffer that is valid until the next call.
+     */
+    CharBuffer decode() {
+      in.flip();
+      int need = (int) (in.remaining() * (double) decoder.maxCharsPerByte()) + 4;
+      if (out.capacity() < need) {
+        out = CharBuffer.allocate(need);
+      }
+
+      while (true) {
+        in.rewind();
+        out.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(in, out, true);
+        if (!result.isOverflow()) {
+          result = decoder.flush(out);
+        }
+        if (!result.isOverflow()) {
+          return out.flip();
+        }
+        out = CharBuffer.allocate(out.capacity() * 2);
+      }
+    }
+
+  }
+
+}
@@ -22,10 +22,13 @@
 
 package cc.ayakurayuki.repo.urls;
 
-import java.io.CharArrayWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
-import java.util.BitSet;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -40,75 +43,154 @@ public abstract class UrlEncoder {
 
   static final char[] upperhex = "0123456789ABCDEF".toCharArray();
 
-  static BitSet unreservedCharacters;
+  /**
+   * DEFAULT is the set {@link #encode(String, Charset)} uses, everything but the RFC 3986
+   * unreserved characters and '*'. '*' has always been kept for compatibility, use
+   * {@link PercentEncodeSet#RFC3986_UNRESERVED} to encode it too.
+   */
+  public static final PercentEncodeSet DEFAULT = PercentEncodeSet.RFC3986_UNRESERVED.toBuilder().keep("*").build();
 
-  static {
-    unreservedCharacters = new BitSet(256);
-
-    int i;
-    for (i = 'a'; i <= 'z'; i++) {
-      unreservedCharacters.set(i);
-    }
-    for (i = 'A'; i <= 'Z'; i++) {
-      unreservedCharacters.set(i);
-    }
-    for (i = '0'; i <= '9'; i++) {
-      unreservedCharacters.set(i);
-    }
-
-    unreservedCharacters.set('-');
-    unreservedCharacters.set('_');
-    unreservedCharacters.set('.');
-    unreservedCharacters.set('*');
-    unreservedCharacters.set('~');
-  }
-
-  static void toHex(StringBuilder out, byte b) {
-    char c = upperhex[(b >> 4) & 0xF];
-    out.append(c);
-    c = upperhex[b & 0xF];
-    out.append(c);
-  }
+  /**
+   * ENCODERS caches one {@link RunEncoder} per thread for the last non-UTF-8 charset used.
+   */
+  private static final ThreadLocal<RunEncoder> ENCODERS = new ThreadLocal<>();
 
   @Nonnull
   public static String encode(@Nonnull String s) {
     return encode(s, StandardCharsets.UTF_8);
   }
 
+  /**
+   * encode percent-encodes everything in s but the unreserved characters,
+   * using the bytes of charset.
+   * <p>
+   * If nothing needs to be encoded, s itself is returned.
+   */
   @Nonnull
   public static String encode(@Nonnull String s, @Nullable Charset charset) {
+    return encode(s, charset, DEFAULT);
+  }
+
+  /**
+   * encode percent-encodes the characters of s in set, using the bytes of charset.
+   * <p>
+   * If nothing needs to be encoded, s itself is returned.
+   */
+  @Nonnull
+  public static String encode(@Nonnull String s, @Nullable Charset charset, @Nonnull PercentEncodeSet set) {
     if (charset == null) {
       charset = StandardCharsets.UTF_8;
     }
 
-    StringBuilder out = new StringBuilder(s.length());
-    CharArrayWriter charArrayWriter = new CharArrayWriter();
+    int n = s.length();
+    int i = set.indexOfEncode(s, 0, n);
+    if (i == n) {
+      return s;
+    }
+
+    if (charset.equals(StandardCharsets.UTF_8)) {
+      return URLs.escape(s, set);
+    }
+    return encodeRuns(s, i, charset, set);
+  }
 
-    for (int i = 0; i < s.length(); ) {
-      int c = s.charAt(i);
+  /**
+   * encodeRuns encodes s from index i on, converting each run of reserved
+   * characters to bytes with charset as a whole, so stateful charsets see
+   * the same input they always did.
+   */
+  private static String encodeRuns(String s, int i, Charset charset, PercentEncodeSet set) {
+    int n = s.length();
+    RunEncoder encoder = ENCODERS.get();
+    if (encoder == null || !encoder.charset.equals(charset)) {
+      encoder = new RunEncoder(charset);
+      ENCODERS.set(encoder);
+    }
 
-      if (unreservedCharacters.get(c)) {
-        out.append((char) c);
+    StringBuilder out = new StringBuilder(i + (n - i) * 3);
+    out.append(s, 0, i);
+    while (i < n) {
+      char c = s.charAt(i);
+      if (!set.shouldEncode(c)) {
+        out.append(c);
         i++;
         continue;
       }
-
-      do {
-        charArrayWriter.write(c);
+      if (c == ' ' && set.spaceAsPlus()) {
+        out.append('+');
         i++;
-      } while (i < s.length() && !unreservedCharacters.get((c = s.charAt(i))));
+        continue;
+      }
 
-      charArrayWriter.flush();
-      String string = charArrayWriter.toString();
-      byte[] bytes = string.getBytes(charset);
-      for (byte b : bytes) {
+      int end = i + 1;
+      while (end < n && set.shouldEncode(s.charAt(end)) && !(s.charAt(end) == ' ' && set.spaceAsPlus())) {
+        end++;
+      }
+      ByteBuffer bytes = encoder.encode(s, i, end);
+      for (int k = 0; k < bytes.limit(); k++) {
+        byte b = bytes.get(k);
         out.append('%');
-        toHex(out, b);
+        out.append(upperhex[(b >> 4) & 0xF]);
+        out.append(upperhex[b & 0xF]);
       }
-      charArrayWriter.reset();
+      i = end;
     }
-
     return out.toString();
   }
 
+  /**
+   * RunEncoder converts runs of chars to bytes with a reusable {@link CharsetEncoder}
+   * and reusable buffers. Malformed and unmappable input is replaced, the same way
+   * {@link String#getBytes(Charset)} does it.
+   * <p>
+   * It is not thread-safe, {@link #ENCODERS} keeps one per thread.
+   */
+  private static final class RunEncoder {
+
+    final Charset        charset;
+    final CharsetEncoder encoder;
+    char[]               chars = new char[64];
+    CharBuffer           in    = CharBuffer.wrap(chars);
+    ByteBuffer           out   = ByteBuffer.allocate(256);
+
+    RunEncoder(Charset charset) {
+      this.charset = charset;
+      this.encoder = charset.newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * encode returns the bytes of s[from:to] in a buffer that is valid until the next call.
+     */
+    ByteBuffer encode(String s, int from, int to) {
+      int len = to - from;
+      if (chars.length < len) {
+        chars = new char[Math.max(len, chars.length * 2)];
+        in = CharBuffer.wrap(chars);
+      }
+      s.getChars(from, to, chars, 0);
+
+      int need = (int) (len * (double) encoder.maxBytesPerChar()) + 16;
+      if (out.capacity() < need) {
+        out = ByteBuffer.allocate(need);
+      }
+
+      while (true) {
+        in.clear().limit(len);
+        out.clear();
+        encoder.reset();
+        CoderResult result = encoder.encode(in, out, true);
+        if (!result.isOverflow()) {
+          result = encoder.flush(out);
+        }
+        if (!result.isOverflow()) {
+          return out.flip();
+        }
+        out = ByteBuffer.allocate(out.capacity() * 2);
+      }
+    }
+
+  }
+
 }
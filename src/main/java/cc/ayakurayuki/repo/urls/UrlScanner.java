@@ -0,0 +1,337 @@
+package cc.ayakurayuki.repo.urls;
+
+/**
+ * UrlScanner finds the component boundaries of a raw url in a single
+ * left-to-right pass, checking for control characters along the way.
+ * <p>
+ * It only records indexes into the input, no String is created. The parser
+ * then validates and materializes the components it needs from them, see
+ * {@link URLs#Parse(CharSequence, int, int)}.
+ * <pre>
+ * scheme:[//[userinfo@]host[:port]]path[?query][#fragment]
+ * </pre>
+ * Every index is absolute in the scanned input, -1 means the delimiter is absent.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-19:40
+ */
+final class UrlScanner {
+
+  int start;
+  int end;
+
+  int ctl;          // first ASCII control character before the fragment
+  int schemeLength; // see URLs.schemeLength: 0 if there is no scheme, -1 if the colon has no scheme before it
+  int rest;         // after "scheme:"
+  int colon;        // first ':' in the first path segment of rest
+  int query;        // '?'
+  int fragment;     // '#'
+
+  // only set when rest starts with "//"
+  int authorityStart; // after the "//"
+  int authorityEnd;   // first '/' of the path after the authority, or pathEnd
+  int at;             // last '@' of the authority
+  int hostColon;      // last ':' of the host
+  int bracket;        // last ']' of the host
+  int zone;           // first "%25" of the host
+
+  // where resume is
+  private static final int SCHEME    = 0; // in the scheme prefix
+  private static final int REST      = 1; // after the scheme prefix
+  private static final int AUTHORITY = 2; // in a bare authority, see scanAuthority
+  private static final int DONE      = 3; // past the '#' of a cut fragment
+
+  private int     state;
+  private int     pos;          // next index to scan
+  private boolean cutFragment;
+  private boolean authority;    // in the authority after "//"
+  private boolean firstSegment;
+
+  /**
+   * scan scans s[start:end]. With cutFragment, the first '#' starts the fragment,
+   * otherwise '#' is an ordinary character, as in a request target.
+   */
+  static UrlScanner scan(CharSequence s, int start, int end, boolean cutFragment) {
+    UrlScanner u = new UrlScanner();
+    u.scanInto(s, start, end, cutFragment);
+    return u;
+  }
+
+  void scanInto(CharSequence s, int start, int end, boolean cutFragment) {
+    begin(start, cutFragment);
+    resume(s, end);
+    finish(end);
+  }
+
+  /**
+   * scanAuthority scans s[start:end] as a bare authority, [userinfo@]host[:port],
+   * such as the authority-form request target of a CONNECT request.
+   * There is no scheme, path, query or fragment, every delimiter belongs to the authority.
+   */
+  static UrlScanner scanAuthority(CharSequence s, int start, int end) {
+    UrlScanner u = new UrlScanner();
+    u.beginAuthority(start);
+    u.resume(s, end);
+    u.finish(end);
+    return u;
+  }
+
+  /**
+   * begin starts an incremental scan of a url at start. The input is then given
+   * to {@link #resume} as it arrives, and {@link #finish} is called at its end.
+   * Every character is looked at once, the indexes are only final after finish.
+   */
+  void begin(int start, boolean cutFragment) {
+    reset(start);
+    this.state = SCHEME;
+    this.cutFragment = cutFragment;
+  }
+
+  /**
+   * beginAuthority starts an incremental scan of a bare authority at start, see {@link #scanAuthority}.
+   */
+  void beginAuthority(int start) {
+    reset(start);
+    this.state = AUTHORITY;
+    this.authorityStart = start;
+  }
+
+  /**
+   * resume scans s[pos:to], where pos is where the previous call stopped.
+   * s must hold the same characters as in the previous calls up to there.
+   */
+  void resume(CharSequence s, int to) {
+    int i = pos;
+    if (state == SCHEME) {
+      i = scanScheme(s, i, to);
+    }
+    if (state == REST) {
+      i = scanRest(s, i, to);
+    } else if (state == AUTHORITY) {
+      i = scanHost(s, i, to);
+    }
+    pos = state == DONE ? to : i;
+  }
+
+  /**
+   * finish ends the scan at end.
+   */
+  void finish(int end) {
+    this.end = end;
+    if (state == SCHEME) {
+      // scheme characters only, none of which is a delimiter
+      schemeLength = 0;
+      rest = start;
+      authorityStart = start + 2;
+      state = REST;
+    }
+    if (state == AUTHORITY) {
+      rest = end;
+      authorityEnd = end;
+    } else if (authority) {
+      authorityEnd = pathEnd();
+    }
+  }
+
+  /**
+   * isScheme reports whether the scan is still in what may be a scheme prefix.
+   */
+  boolean isScheme() {
+    return state == SCHEME;
+  }
+
+  private void reset(int start) {
+    this.start = start;
+    this.end = -1;
+    this.ctl = -1;
+    this.schemeLength = 0;
+    this.rest = start;
+    this.colon = -1;
+    this.query = -1;
+    this.fragment = -1;
+    this.authorityStart = start + 2;
+    this.authorityEnd = -1;
+    this.at = -1;
+    this.hostColon = -1;
+    this.bracket = -1;
+    this.zone = -1;
+    this.pos = start;
+    this.cutFragment = false;
+    this.authority = false;
+    this.firstSegment = true;
+  }
+
+  /**
+   * scanScheme scans the scheme prefix, ending at the first character that cannot be in it,
+   * none of which is a delimiter or a control character.
+   */
+  private int scanScheme(CharSequence s, int i, int to) {
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (Chars.isSchemeAlpha(c)) {
+        continue;
+      }
+      if (Chars.isSchemeChar(c)) {
+        if (i == start) {
+          break;
+        }
+        continue;
+      }
+      if (c == ':') {
+        schemeLength = i == start ? -1 : i - start;
+      }
+      break;
+    }
+    if (i == to) {
+      return i;
+    }
+    if (schemeLength > 0) {
+      rest = start + schemeLength + 1;
+      authorityStart = rest + 2;
+      i = rest;
+    }
+    state = REST;
+    return i;
+  }
+
+  private int scanRest(CharSequence s, int i, int to) {
+    if (i < authorityStart) {
+      // whether rest starts with "//" is only known after its first two characters
+      int limit = Math.min(to, authorityStart);
+      i = scanPath(s, i, limit);
+      if (i < authorityStart || state == DONE) {
+        return i;
+      }
+      authority = s.charAt(rest) == '/' && s.charAt(rest + 1) == '/';
+    }
+    return scanPath(s, i, to);
+  }
+
+  private int scanPath(CharSequence s, int i, int to) {
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80 && Chars.isCTL(c)) {
+        if (ctl < 0) {
+          ctl = i;
+        }
+        continue;
+      }
+      switch (c) {
+        case '#':
+          if (cutFragment) {
+            fragment = i;
+            state = DONE;
+            return to;
+          }
+          break;
+        case '?':
+          if (query < 0) {
+            query = i;
+            firstSegment = false;
+            if (authority) {
+              authority = false;
+              authorityEnd = i;
+            }
+          }
+          break;
+        case '/':
+          if (query < 0) {
+            firstSegment = false;
+            if (authority) {
+              authority = false;
+              authorityEnd = i;
+            }
+          }
+          break;
+        case ':':
+          if (query < 0) {
+            if (firstSegment && colon < 0) {
+              colon = i;
+            }
+            if (authority) {
+              hostColon = i;
+            }
+          }
+          break;
+        case '@':
+          if (authority) {
+            at = i;
+            hostColon = -1;
+            bracket = -1;
+            zone = -1;
+          }
+          break;
+        case ']':
+          if (authority) {
+            bracket = i;
+          }
+          break;
+        case '5':
+          // the "%25" is found at its end, so it may arrive in pieces
+          if (authority && zone < 0 && s.charAt(i - 1) == '2' && s.charAt(i - 2) == '%') {
+            zone = i - 2;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return i;
+  }
+
+  private int scanHost(CharSequence s, int i, int to) {
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80 && Chars.isCTL(c)) {
+        if (ctl < 0) {
+          ctl = i;
+        }
+        continue;
+      }
+      switch (c) {
+        case ':':
+          hostColon = i;
+          break;
+        case '@':
+          at = i;
+          hostColon = -1;
+          bracket = -1;
+          zone = -1;
+          break;
+        case ']':
+          bracket = i;
+          break;
+        case '5':
+          if (zone < 0 && i - 2 >= start && s.charAt(i - 1) == '2' && s.charAt(i - 2) == '%') {
+            zone = i - 2;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * preEnd returns the end of the url without the fragment.
+   */
+  int preEnd() {
+    return fragment < 0 ? end : fragment;
+  }
+
+  /**
+   * pathEnd returns the end of the path, where the query or the fragment starts.
+   */
+  int pathEnd() {
+    return query >= 0 ? query : preEnd();
+  }
+
+  /**
+   * hostStart returns where the host starts, after the userinfo, if there is an authority.
+   */
+  int hostStart() {
+    return at >= 0 ? at + 1 : authorityStart;
+  }
+
+}
@@ -0,0 +1,316 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.util.Objects;
+
+/**
+ * UrlView is a read-only view of a parsed url, returned by {@link URLs#parseLazy(String)}.
+ * <p>
+ * It keeps the source string and the offsets of its components. A component is
+ * only sliced and unescaped the first time it is read, then it is kept. Every
+ * getter returns what the getter of the same name on the {@link URL} from
+ * {@link URLs#Parse(String)} would return, {@link #toURL()} builds that URL.
+ * <p>
+ * A view is safe to share between threads, a component may then be computed more than once.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-20:20
+ */
+public final class UrlView {
+
+  // offsets
+  static final int SCHEME   = 0; // length of the scheme, 0 if there is none
+  static final int USER     = 1; // start of the userinfo, -1 if there is none
+  static final int HOST     = 2; // start of the host, -1 if there is no authority
+  static final int ZONE     = 3; // start of the zone of an IP-literal, -1 if there is none
+  static final int BRACKET  = 4; // the ']' of an IP-literal with a zone
+  static final int PATH     = 5; // start of the path or the opaque, also the end of the host
+  static final int PATH_END = 6; // end of the path or the opaque
+  static final int FRAGMENT = 7; // the '#', -1 if there is none
+  static final int FLAGS    = 8;
+
+  // flags
+  static final int OPAQUE      = 1;
+  static final int OMIT_HOST   = 1 << 1;
+  static final int FORCE_QUERY = 1 << 2;
+
+  // the user of a view without userinfo, once it has been looked at
+  private static final Userinfo NO_USER = new Userinfo("");
+
+  private final String source;
+  private final int[]  offsets;
+
+  // materialized components, null until first read
+  private String   scheme;
+  private Userinfo user;      // NO_USER if there is none
+  private String   host;
+  private String   path;
+  private String   rawQuery;
+  private String   fragment;
+
+  UrlView(String source, UrlScanner u) {
+    this.source = source;
+    this.offsets = new int[FLAGS + 1];
+    offsets(source, u, offsets);
+  }
+
+  /**
+   * offsets fills o with the offsets of the components of the url in s that u has scanned and parse has accepted.
+   */
+  static void offsets(CharSequence s, UrlScanner u, int[] o) {
+    int flags = 0;
+
+    int rest = u.rest;
+    int pathEnd = u.pathEnd();
+    int preEnd = u.preEnd();
+    boolean slash = rest < pathEnd && s.charAt(rest) == '/';
+    boolean doubleSlash = slash && rest + 1 < pathEnd && s.charAt(rest + 1) == '/';
+    boolean tripleSlash = doubleSlash && rest + 2 < pathEnd && s.charAt(rest + 2) == '/';
+
+    o[SCHEME] = u.schemeLength;
+    o[USER] = -1;
+    o[HOST] = -1;
+    o[ZONE] = -1;
+    o[BRACKET] = -1;
+    o[PATH] = rest;
+    o[PATH_END] = pathEnd;
+    o[FRAGMENT] = u.fragment;
+    if (u.schemeLength > 0 && !slash) {
+      flags |= OPAQUE;
+    } else if ((u.schemeLength > 0 || !tripleSlash) && doubleSlash) {
+      int hostStart = u.hostStart();
+      o[USER] = u.at >= 0 ? u.authorityStart : -1;
+      o[HOST] = hostStart;
+      if (hostStart < u.authorityEnd && s.charAt(hostStart) == '[' && u.zone >= 0 && u.zone < u.bracket) {
+        o[ZONE] = u.zone;
+        o[BRACKET] = u.bracket;
+      }
+      o[PATH] = u.authorityEnd;
+    } else if (u.schemeLength > 0) {
+      flags |= OMIT_HOST;
+    }
+    if (u.query >= 0 && u.query == preEnd - 1) {
+      flags |= FORCE_QUERY;
+    }
+    o[FLAGS] = flags;
+  }
+
+  /**
+   * source returns the raw url this view was parsed from.
+   */
+  public String source() {
+    return source;
+  }
+
+  public String getScheme() {
+    String s = scheme;
+    if (s == null) {
+      int n = offsets[SCHEME];
+      s = n == 0 ? "" : source.substring(0, n).toLowerCase();
+      scheme = s;
+    }
+    return s;
+  }
+
+  public String getOpaque() {
+    if ((offsets[FLAGS] & OPAQUE) == 0) {
+      return "";
+    }
+    return source.substring(offsets[PATH], offsets[PATH_END]);
+  }
+
+  public Userinfo getUser() {
+    // one field, so another thread sees either nothing yet or the whole result
+    Userinfo u = user;
+    if (u == null) {
+      u = NO_USER;
+      int start = offsets[USER];
+      if (start >= 0) {
+        int at = offsets[HOST] - 1;
+        int colon = Strings.indexChar(source, ':', start, at);
+        if (colon < 0) {
+          u = new Userinfo(URLs.unescapeOrNull(source, start, at, Encoding.UserPassword));
+        } else {
+          u = new Userinfo(URLs.unescapeOrNull(source, start, colon, Encoding.UserPassword),
+                           URLs.unescapeOrNull(source, colon + 1, at, Encoding.UserPassword));
+        }
+      }
+      user = u;
+    }
+    return u == NO_USER ? null : u;
+  }
+
+  public String username() {
+    Userinfo u = getUser();
+    return u == null ? "" : u.username();
+  }
+
+  /**
+   * getHost returns the unescaped host or host:port.
+   */
+  public String getHost() {
+    String h = host;
+    if (h == null) {
+      int start = offsets[HOST];
+      h = start < 0 ? "" : URLs.host(source, start, offsets[PATH], offsets[ZONE], offsets[BRACKET]);
+      host = h;
+    }
+    return h;
+  }
+
+  /**
+   * hostname returns the host, stripping any valid port number, see {@link URL#hostname()}.
+   */
+  public String hostname() {
+    String h = getHost();
+    return URLs.hostname(h, URLs.indexOfHostEnd(h, 0, h.length()));
+  }
+
+  /**
+   * port returns the port part of the host, without the leading colon, see {@link URL#port()}.
+   */
+  public String port() {
+    String h = getHost();
+    return URLs.port(h, URLs.indexOfHostEnd(h, 0, h.length()));
+  }
+
+  /**
+   * getPath returns the unescaped path. Like {@link URL#setPath(String)}, an invalid escaping gives an empty path.
+   */
+  public String getPath() {
+    String p = path;
+    if (p == null) {
+      p = "";
+      if ((offsets[FLAGS] & OPAQUE) == 0) {
+        String unescaped = URLs.unescapeOrNull(source, offsets[PATH], offsets[PATH_END], Encoding.Path);
+        if (unescaped != null) {
+          p = unescaped;
+        }
+      }
+      path = p;
+    }
+    return p;
+  }
+
+  /**
+   * escapedPath returns the escaped form of the path, see {@link URL#escapedPath()}.
+   * It is the path as it is in the source whenever that is a valid escaping.
+   */
+  public String escapedPath() {
+    String p = getPath();
+    if ((offsets[FLAGS] & OPAQUE) == 0 && offsets[PATH] < offsets[PATH_END] && !p.isEmpty()) {
+      String raw = rawPath();
+      if (URLs.validEncoded(raw, Encoding.Path)) {
+        return raw;
+      }
+    }
+    if (Objects.equals(p, "*")) {
+      return "*";
+    }
+    return URLs.escape(p, Encoding.Path);
+  }
+
+  /**
+   * pathSegment returns the i-th segment of the escaped path, without unescaping it,
+   * or null if there are not that many. The segment after the leading '/' is the 0th one.
+   */
+  public String pathSegment(int i) {
+    if (i < 0 || (offsets[FLAGS] & OPAQUE) != 0) {
+      return null;
+    }
+    int end = offsets[PATH_END];
+    int from = offsets[PATH];
+    if (from < end && source.charAt(from) == '/') {
+      from++;
+    }
+    for (; i > 0; i--) {
+      int slash = Strings.indexChar(source, '/', from, end);
+      if (slash < 0) {
+        return null;
+      }
+      from = slash + 1;
+    }
+    int slash = Strings.indexChar(source, '/', from, end);
+    return source.substring(from, slash < 0 ? end : slash);
+  }
+
+  public boolean isOmitHost() {
+    return (offsets[FLAGS] & OMIT_HOST) != 0;
+  }
+
+  public boolean isForceQuery() {
+    return (offsets[FLAGS] & FORCE_QUERY) != 0;
+  }
+
+  public String getRawQuery() {
+    String q = rawQuery;
+    if (q == null) {
+      // the path ends at the '?', if there is one
+      int question = offsets[PATH_END];
+      int end = offsets[FRAGMENT] < 0 ? source.length() : offsets[FRAGMENT];
+      q = question + 1 < end ? source.substring(question + 1, end) : "";
+      rawQuery = q;
+    }
+    return q;
+  }
+
+  /**
+   * query parses the raw query and returns the corresponding values, see {@link URL#query()}.
+   */
+  public Values query() {
+    return URLs.ParseQuery(getRawQuery()).ok();
+  }
+
+  /**
+   * getFragment returns the unescaped fragment. Like {@link URL#setFragment(String)}, an invalid escaping gives an empty fragment.
+   */
+  public String getFragment() {
+    String f = fragment;
+    if (f == null) {
+      f = "";
+      int hash = offsets[FRAGMENT];
+      if (hash >= 0 && hash + 1 < source.length()) {
+        String unescaped = URLs.unescapeOrNull(source, hash + 1, source.length(), Encoding.Fragment);
+        if (unescaped != null) {
+          f = unescaped;
+        }
+      }
+      fragment = f;
+    }
+    return f;
+  }
+
+  /**
+   * toURL materializes every component into the {@link URL} that {@link URLs#Parse(String)} returns.
+   */
+  public URL toURL() {
+    URL url = new URL();
+    url.setScheme(getScheme());
+    url.setOpaque(getOpaque());
+    url.setUser(getUser());
+    url.setHost(getHost());
+    url.setOmitHost(isOmitHost());
+    if ((offsets[FLAGS] & OPAQUE) == 0) {
+      url.setPath(rawPath());
+    }
+    url.setForceQuery(isForceQuery());
+    url.setRawQuery(getRawQuery());
+    int hash = offsets[FRAGMENT];
+    if (hash >= 0 && hash + 1 < source.length()) {
+      url.setFragment(source.substring(hash + 1));
+    }
+    return url;
+  }
+
+  /**
+   * toString returns the source, use {@link #toURL()} for the normalized form.
+   */
+  @Override
+  public String toString() {
+    return source;
+  }
+
+  private String rawPath() {
+    return source.substring(offsets[PATH], offsets[PATH_END]);
+  }
+
+}
@@ -55,11 +55,19 @@ public class Userinfo implements Serializable {
 
   @Override
   public String toString() {
-    String s = URLs.escape(username(), Encoding.UserPassword);
+    return appendTo(new StringBuilder()).toString();
+  }
+
+  /**
+   * appendTo appends the escaped "username[:password]" form to buf.
+   */
+  StringBuilder appendTo(StringBuilder buf) {
+    URLs.escapeTo(buf, username(), Encoding.UserPassword);
     if (isPasswordSet()) {
-      s += ":" + URLs.escape(password(), Encoding.UserPassword);
+      buf.append(':');
+      URLs.escapeTo(buf, password(), Encoding.UserPassword);
     }
-    return s;
+    return buf;
   }
 
   public Userinfo deepClone() {
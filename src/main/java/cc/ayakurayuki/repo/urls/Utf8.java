@@ -0,0 +1,149 @@
+package cc.ayakurayuki.repo.urls;
+
+import java.io.IOException;
+
+/**
+ * Utf8 writes code points as percent-encoded UTF-8 without going through
+ * temporary byte arrays.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-11:05
+ */
+abstract class Utf8 {
+
+  /**
+   * The most chars a single code point can expand to, four "%XX" triplets.
+   */
+  static final int MAX_ESCAPED_LENGTH = 12;
+
+  /**
+   * REPLACEMENT is what an unpaired surrogate encodes to, the same byte
+   * {@link String#getBytes(java.nio.charset.Charset)} substitutes.
+   */
+  static final int REPLACEMENT = '?';
+
+  /**
+   * codePointAt returns the code point starting at s[i], or {@link #REPLACEMENT}
+   * if s[i] is a surrogate that is not part of a valid pair.
+   * Callers advance by {@link Character#charCount(int)} of the result.
+   */
+  static int codePointAt(CharSequence s, int i, int end) {
+    char c = s.charAt(i);
+    if (!Character.isSurrogate(c)) {
+      return c;
+    }
+    if (Character.isHighSurrogate(c) && i + 1 < end) {
+      char d = s.charAt(i + 1);
+      if (Character.isLowSurrogate(d)) {
+        return Character.toCodePoint(c, d);
+      }
+    }
+    return REPLACEMENT;
+  }
+
+  /**
+   * encodedLength returns the number of UTF-8 bytes needed for cp.
+   */
+  static int encodedLength(int cp) {
+    if (cp < 0x80) {
+      return 1;
+    }
+    if (cp < 0x800) {
+      return 2;
+    }
+    if (cp < 0x10000) {
+      return 3;
+    }
+    return 4;
+  }
+
+  /**
+   * percentEncode writes the UTF-8 bytes of cp as "%XX" triplets at t[w]
+   * and returns the next write position.
+   */
+  static int percentEncode(char[] t, int w, int cp) {
+    if (cp < 0x80) {
+      return hex(t, w, cp);
+    }
+    if (cp < 0x800) {
+      w = hex(t, w, 0xC0 | (cp >> 6));
+      return hex(t, w, 0x80 | (cp & 0x3F));
+    }
+    if (cp < 0x10000) {
+      w = hex(t, w, 0xE0 | (cp >> 12));
+      w = hex(t, w, 0x80 | ((cp >> 6) & 0x3F));
+      return hex(t, w, 0x80 | (cp & 0x3F));
+    }
+    w = hex(t, w, 0xF0 | (cp >> 18));
+    w = hex(t, w, 0x80 | ((cp >> 12) & 0x3F));
+    w = hex(t, w, 0x80 | ((cp >> 6) & 0x3F));
+    return hex(t, w, 0x80 | (cp & 0x3F));
+  }
+
+  /**
+   * percentEncode appends the UTF-8 bytes of cp as "%XX" triplets to dst.
+   */
+  static void percentEncode(Appendable dst, int cp) throws IOException {
+    if (cp < 0x80) {
+      hex(dst, cp);
+    } else if (cp < 0x800) {
+      hex(dst, 0xC0 | (cp >> 6));
+      hex(dst, 0x80 | (cp & 0x3F));
+    } else if (cp < 0x10000) {
+      hex(dst, 0xE0 | (cp >> 12));
+      hex(dst, 0x80 | ((cp >> 6) & 0x3F));
+      hex(dst, 0x80 | (cp & 0x3F));
+    } else {
+      hex(dst, 0xF0 | (cp >> 18));
+      hex(dst, 0x80 | ((cp >> 12) & 0x3F));
+      hex(dst, 0x80 | ((cp >> 6) & 0x3F));
+      hex(dst, 0x80 | (cp & 0x3F));
+    }
+  }
+
+  /**
+   * encode writes the UTF-8 bytes of cp at b[w] and returns the next write position.
+   */
+  static int encode(byte[] b, int w, int cp) {
+    if (cp < 0x80) {
+      b[w] = (byte) cp;
+      return w + 1;
+    }
+    if (cp < 0x800) {
+      b[w] = (byte) (0xC0 | (cp >> 6));
+      b[w + 1] = (byte) (0x80 | (cp & 0x3F));
+      return w + 2;
+    }
+    if (cp < 0x10000) {
+      b[w] = (byte) (0xE0 | (cp >> 12));
+      b[w + 1] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+      b[w + 2] = (byte) (0x80 | (cp & 0x3F));
+      return w + 3;
+    }
+    b[w] = (byte) (0xF0 | (cp >> 18));
+    b[w + 1] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+    b[w + 2] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+    b[w + 3] = (byte) (0x80 | (cp & 0x3F));
+    return w + 4;
+  }
+
+  /**
+   * hex writes b as "%XX" at t[w] and returns the next write position.
+   */
+  static int hex(char[] t, int w, int b) {
+    t[w] = '%';
+    t[w + 1] = UrlEncoder.upperhex[(b >> 4) & 0xF];
+    t[w + 2] = UrlEncoder.upperhex[b & 0xF];
+    return w + 3;
+  }
+
+  /**
+   * hex appends b as "%XX" to dst.
+   */
+  static void hex(Appendable dst, int b) throws IOException {
+    dst.append('%');
+    dst.append(UrlEncoder.upperhex[(b >> 4) & 0xF]);
+    dst.append(UrlEncoder.upperhex[b & 0xF]);
+  }
+
+}
@@ -81,14 +81,22 @@ public class Values extends HashMap<String, List<String>> {
     Set<String> keys = new TreeSet<>(keySet());
     for (String k : keys) {
       List<String> vs = get(k);
-      String keyEscaped = URLs.QueryEscape(k);
+      // the key is escaped once, then copied from where it is in buf
+      int keyStart = -1;
+      int keyEnd = -1;
       for (String v : vs) {
         if (buf.length() > 0) {
           buf.append('&');
         }
-        buf.append(keyEscaped);
+        if (keyStart < 0) {
+          keyStart = buf.length();
+          URLs.escapeTo(buf, k, Encoding.QueryComponent);
+          keyEnd = buf.length();
+        } else {
+          buf.append(buf, keyStart, keyEnd);
+        }
         buf.append('=');
-        buf.append(URLs.QueryEscape(v));
+        URLs.escapeTo(buf, v, Encoding.QueryComponent);
       }
     }
     return buf.toString();
@@ -1,6 +1,11 @@
 package cc.ayakurayuki.repo.urls.exception;
 
 /**
+ * EscapeException reports a malformed or disallowed %-escape.
+ * <p>
+ * It is returned as a value far more often than it is thrown, so it records no
+ * stack trace and only formats its message when asked for it.
+ *
  * @author Ayakura Yuki
  * @date 2024/04/03-16:13
  */
@@ -11,7 +16,7 @@ public class EscapeException extends RuntimeException {
   private final String escape;
 
   public EscapeException(String escape) {
-    super(String.format("invalid URL escape %s", escape));
+    super(null, null, false, false);
     this.escape = escape;
   }
 
@@ -19,4 +24,9 @@ public class EscapeException extends RuntimeException {
     return escape;
   }
 
+  @Override
+  public String getMessage() {
+    return "invalid URL escape " + escape;
+  }
+
 }
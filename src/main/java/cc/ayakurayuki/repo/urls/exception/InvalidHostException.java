@@ -1,6 +1,11 @@
 package cc.ayakurayuki.repo.urls.exception;
 
 /**
+ * InvalidHostException reports a character that is not allowed in a host name.
+ * <p>
+ * Like {@link EscapeException}, it records no stack trace and only formats its
+ * message when asked for it.
+ *
  * @author Ayakura Yuki
  * @date 2024/04/03-16:16
  */
@@ -11,7 +16,7 @@ public class InvalidHostException extends RuntimeException {
   private final String character;
 
   public InvalidHostException(String character) {
-    super(String.format("invalid character %s in host name", character));
+    super(null, null, false, false);
     this.character = character;
   }
 
@@ -19,4 +24,9 @@ public class InvalidHostException extends RuntimeException {
     return character;
   }
 
+  @Override
+  public String getMessage() {
+    return "invalid character " + character + " in host name";
+  }
+
 }
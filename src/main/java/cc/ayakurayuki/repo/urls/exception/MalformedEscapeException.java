@@ -0,0 +1,30 @@
+package cc.ayakurayuki.repo.urls.exception;
+
+import java.io.IOException;
+
+/**
+ * MalformedEscapeException reports an {@link EscapeException} or {@link InvalidHostException}
+ * hit while unescaping a stream, together with where it happened.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-15:40
+ */
+public class MalformedEscapeException extends IOException {
+
+  private static final long serialVersionUID = 3517954066413785402L;
+
+  private final long offset;
+
+  public MalformedEscapeException(long offset, RuntimeException cause) {
+    super(String.format("%s at offset %d", cause.getMessage(), offset), cause);
+    this.offset = offset;
+  }
+
+  /**
+   * getOffset returns the offset of the offending byte in the encoded stream, counted from 0.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+}
@@ -1,6 +1,10 @@
 package cc.ayakurayuki.repo.urls.exception;
 
 /**
+ * UrlException reports an error and the operation and URL that caused it.
+ * <p>
+ * It records no stack trace, the cause it wraps says what went wrong.
+ *
  * @author Ayakura Yuki
  * @date 2024/04/03-16:17
  */
@@ -12,19 +16,17 @@ public class UrlException extends RuntimeException {
   private final String url;
 
   public UrlException(String op, String url) {
-    super("invalid url");
-    this.op = op;
-    this.url = url;
+    this(op, url, "invalid url");
   }
 
   public UrlException(String op, String url, String message) {
-    super(message);
+    super(message, null, false, false);
     this.op = op;
     this.url = url;
   }
 
   public UrlException(String op, String url, Throwable cause) {
-    super(cause);
+    super(null, cause, false, false);
     this.op = op;
     this.url = url;
   }
@@ -37,9 +39,21 @@ public class UrlException extends RuntimeException {
     return url;
   }
 
+  /**
+   * getMessage returns the message, or the description of the cause if there is none.
+   */
+  @Override
+  public String getMessage() {
+    String message = super.getMessage();
+    if (message == null && getCause() != null) {
+      return getCause().toString();
+    }
+    return message;
+  }
+
   @Override
   public String toString() {
-    return String.format("%s %s: %s", op, url, super.getMessage());
+    return String.format("%s %s: %s", op, url, getMessage());
   }
 
 }
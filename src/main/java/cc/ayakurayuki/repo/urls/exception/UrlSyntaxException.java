@@ -0,0 +1,28 @@
+package cc.ayakurayuki.repo.urls.exception;
+
+/**
+ * UrlSyntaxException reports a URL that does not follow the syntax the parser accepts,
+ * such as a missing scheme, an invalid port or control characters.
+ * <p>
+ * It is an {@link IllegalArgumentException}, as these errors always were, but it
+ * records no stack trace: junk input is common and the trace would only ever
+ * point into the parser.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-16:10
+ */
+public class UrlSyntaxException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = -2318417651127085933L;
+
+  public UrlSyntaxException(String message) {
+    super(message);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    // stackless, see the class comment
+    return this;
+  }
+
+}
@@ -0,0 +1,72 @@
+package cc.ayakurayuki.repo.urls;
+
+/**
+ * Scans holds the linear scans that escaping, unescaping and validation spend
+ * most of their time in.
+ * <p>
+ * This is the Java 17 version from the multi-release jar. When the
+ * {@code jdk.incubator.vector} module has been added to the runtime
+ * ({@code --add-modules jdk.incubator.vector}), a range of at least
+ * {@link #VECTOR_THRESHOLD} chars is scanned with the scalar loops in
+ * {@link Chars} for its first {@link #SCALAR_PREFIX} chars, and only if
+ * nothing is found there does the rest go through {@link VectorScans}.
+ * The escaping loops call a scan again after every match, so input dense
+ * with matches stays on the scalar path and only long clean runs pay for the
+ * vector setup. Setting the system property
+ * {@code cc.ayakurayuki.repo.urls.vector} to false turns the vector path off.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-14:10
+ */
+abstract class Scans {
+
+  /**
+   * Below this many chars, setting up the vector loop costs more than it saves.
+   */
+  static final int VECTOR_THRESHOLD = 64;
+
+  /**
+   * How many chars are scanned one by one before switching to the vector loop.
+   */
+  static final int SCALAR_PREFIX = 32;
+
+  private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+      && Boolean.parseBoolean(System.getProperty("cc.ayakurayuki.repo.urls.vector", "true"));
+
+  /**
+   * indexOfEscape returns the index of the first character in s[from:to] that
+   * must be escaped in the given mode, or to if there is none.
+   */
+  static int indexOfEscape(CharSequence s, int from, int to, Encoding mode) {
+    if (VECTOR && to - from >= VECTOR_THRESHOLD) {
+      int i = Chars.indexOfEscape(s, from, from + SCALAR_PREFIX, mode);
+      return i < from + SCALAR_PREFIX ? i : VectorScans.indexOfEscape(s, i, to, mode);
+    }
+    return Chars.indexOfEscape(s, from, to, mode);
+  }
+
+  /**
+   * indexOfCTL returns the index of the first ASCII control character in s[from:to],
+   * or to if there is none.
+   */
+  static int indexOfCTL(CharSequence s, int from, int to) {
+    if (VECTOR && to - from >= VECTOR_THRESHOLD) {
+      int i = Chars.indexOfCTL(s, from, from + SCALAR_PREFIX);
+      return i < from + SCALAR_PREFIX ? i : VectorScans.indexOfCTL(s, i, to);
+    }
+    return Chars.indexOfCTL(s, from, to);
+  }
+
+  /**
+   * indexOfPercent returns the index of the first '%', '+' or non-ASCII character
+   * in s[from:to], or to if there is none.
+   */
+  static int indexOfPercent(CharSequence s, int from, int to) {
+    if (VECTOR && to - from >= VECTOR_THRESHOLD) {
+      int i = Chars.indexOfPercent(s, from, from + SCALAR_PREFIX);
+      return i < from + SCALAR_PREFIX ? i : VectorScans.indexOfPercent(s, i, to);
+    }
+    return Chars.indexOfPercent(s, from, to);
+  }
+
+}
@@ -0,0 +1,140 @@
+package cc.ayakurayuki.repo.urls;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.UNSIGNED_GE;
+import static jdk.incubator.vector.VectorOperators.UNSIGNED_LE;
+import static jdk.incubator.vector.VectorOperators.UNSIGNED_LT;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorScans runs the {@link Scans} over as many chars at a time as the
+ * preferred vector shape holds, 16 with AVX2 and 32 with AVX-512.
+ * <p>
+ * The input is copied chunk by chunk into a per-thread char[] with
+ * {@link String#getChars(int, int, char[], int)}, which is itself a vectorized
+ * copy, and the lanes are loaded from there. The first chunk is small and
+ * each next one twice as large, up to {@link #CHUNK}, so a match near the
+ * start does not pay for copying chars that are never looked at. Tails
+ * shorter than a vector fall back to the scalar checks in {@link Chars}.
+ * <p>
+ * Only {@link Scans} may touch this class, and only after checking that the
+ * incubator module is present, otherwise loading it fails.
+ *
+ * @author Ayakura Yuki
+ * @date 2026/10/16-14:10
+ */
+abstract class VectorScans {
+
+  private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+  private static final int FIRST_CHUNK = 64;
+  private static final int CHUNK       = 512;
+
+  private static final ThreadLocal<char[]> BUFFERS = ThreadLocal.withInitial(() -> new char[CHUNK]);
+
+  static int indexOfEscape(CharSequence s, int from, int to, Encoding mode) {
+    char[] buf = BUFFERS.get();
+    int step = SPECIES.length();
+    int n;
+    for (int base = from, chunk = FIRST_CHUNK; base < to; base += n, chunk = Math.min(chunk * 2, CHUNK)) {
+      n = Math.min(chunk, to - base);
+      getChars(s, base, base + n, buf);
+      int j = 0;
+      for (int bound = SPECIES.loopBound(n); j < bound; j += step) {
+        ShortVector v = ShortVector.fromCharArray(SPECIES, buf, j);
+        // alphanumerics are never escaped, anything else gets the per-mode table check
+        long candidates = alnum(v).not().toLong();
+        for (; candidates != 0; candidates &= candidates - 1) {
+          int k = j + Long.numberOfTrailingZeros(candidates);
+          if (Chars.shouldEscape(buf[k], mode)) {
+            return base + k;
+          }
+        }
+      }
+      for (; j < n; j++) {
+        if (Chars.shouldEscape(buf[j], mode)) {
+          return base + j;
+        }
+      }
+    }
+    return to;
+  }
+
+  static int indexOfCTL(CharSequence s, int from, int to) {
+    char[] buf = BUFFERS.get();
+    int step = SPECIES.length();
+    int n;
+    for (int base = from, chunk = FIRST_CHUNK; base < to; base += n, chunk = Math.min(chunk * 2, CHUNK)) {
+      n = Math.min(chunk, to - base);
+      getChars(s, base, base + n, buf);
+      int j = 0;
+      for (int bound = SPECIES.loopBound(n); j < bound; j += step) {
+        ShortVector v = ShortVector.fromCharArray(SPECIES, buf, j);
+        VectorMask<Short> m = v.compare(UNSIGNED_LT, (short) ' ').or(v.compare(EQ, (short) 0x7f));
+        if (m.anyTrue()) {
+          return base + j + m.firstTrue();
+        }
+      }
+      for (; j < n; j++) {
+        if (Chars.isCTL(buf[j])) {
+          return base + j;
+        }
+      }
+    }
+    return to;
+  }
+
+  static int indexOfPercent(CharSequence s, int from, int to) {
+    char[] buf = BUFFERS.get();
+    int step = SPECIES.length();
+    int n;
+    for (int base = from, chunk = FIRST_CHUNK; base < to; base += n, chunk = Math.min(chunk * 2, CHUNK)) {
+      n = Math.min(chunk, to - base);
+      getChars(s, base, base + n, buf);
+      int j = 0;
+      for (int bound = SPECIES.loopBound(n); j < bound; j += step) {
+        ShortVector v = ShortVector.fromCharArray(SPECIES, buf, j);
+        VectorMask<Short> m = v.compare(EQ, (short) '%')
+            .or(v.compare(EQ, (short) '+'))
+            .or(v.compare(UNSIGNED_GE, (short) 0x80));
+        if (m.anyTrue()) {
+          return base + j + m.firstTrue();
+        }
+      }
+      for (; j < n; j++) {
+        char c = buf[j];
+        if (c == '%' || c == '+' || c >= 0x80) {
+          return base + j;
+        }
+      }
+    }
+    return to;
+  }
+
+  /**
+   * alnum returns the lanes of v that hold an ASCII letter or digit.
+   */
+  private static VectorMask<Short> alnum(ShortVector v) {
+    VectorMask<Short> digits = v.compare(UNSIGNED_GE, (short) '0').and(v.compare(UNSIGNED_LE, (short) '9'));
+    // setting 0x20 folds upper case onto lower case, and nothing else onto a-z
+    ShortVector folded = v.or((short) 0x20);
+    VectorMask<Short> letters = folded.compare(UNSIGNED_GE, (short) 'a').and(folded.compare(UNSIGNED_LE, (short) 'z'));
+    return digits.or(letters);
+  }
+
+  private static void getChars(CharSequence s, int from, int to, char[] dst) {
+    if (s instanceof String) {
+      ((String) s).getChars(from, to, dst, 0);
+    } else if (s instanceof StringBuilder) {
+      ((StringBuilder) s).getChars(from, to, dst, 0);
+    } else {
+      for (int i = from; i < to; i++) {
+        dst[i - from] = s.charAt(i);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.exception.UrlException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CanonicalRequestTest {
+
+  @Test
+  public void testCanonicalUri() {
+    assertEquals("/", CanonicalRequest.canonicalUri(URLs.Parse("https://example.com").ok()));
+    assertEquals("/test%24file.text", CanonicalRequest.canonicalUri(URLs.Parse("https://example.com/test$file.text").ok()));
+    assertEquals("/bucket/my%20photo%2B%28%E6%97%A5%29.jpg",
+        CanonicalRequest.canonicalUri(URLs.Parse("https://example.com/bucket/my%20photo+(%e6%97%a5).jpg").ok()));
+    assertEquals("/a/b%2Fc/~~", CanonicalRequest.canonicalUri(URLs.Parse("https://example.com/a/b%2Fc/%7E~").ok()));
+    assertEquals("/documents%2520and%2520settings/", CanonicalRequest.canonicalUri(URLs.Parse("https://example.com/documents and settings/").ok(), true));
+
+    assertEquals("/a%2Ab", CanonicalRequest.canonicalUri("a*b", false).ok());
+    Result<String, Exception> r = CanonicalRequest.canonicalUri("/a%2", false);
+    assertTrue(r.err() instanceof EscapeException);
+    assertEquals("%2", ((EscapeException) r.err()).getEscape());
+  }
+
+  @Test
+  public void testCanonicalQuery() {
+    String[][] tests = {
+        {"", ""},
+        {"Action=ListUsers&Version=2010-05-08", "Action=ListUsers&Version=2010-05-08"},
+        {"prefix=somePrefix&marker=someMarker&max-keys=20", "marker=someMarker&max-keys=20&prefix=somePrefix"},
+        {"acl", "acl="},
+        {"b=2&a=2&a=1&&a=", "a=&a=1&a=2&b=2"},
+        {"k=a+b*c%7e&K=%e6%97%a5", "K=%E6%97%A5&k=a%20b%2Ac~"},
+        {"a=%2B&a=%20&a=+", "a=%20&a=%20&a=%2B"},
+    };
+    for (String[] tt : tests) {
+      Result<String, Exception> r = CanonicalRequest.canonicalQuery(tt[0]);
+      assertNull(tt[0], r.err());
+      assertEquals(tt[0], tt[1], r.ok());
+    }
+
+    Result<String, Exception> r = CanonicalRequest.canonicalQuery("b=1&a=%zz&c=3;d=4");
+    assertEquals("b=1", r.ok());
+    assertTrue(r.err() instanceof UrlException);
+    r = CanonicalRequest.canonicalQuery("b=1&a=%zz");
+    assertEquals("b=1", r.ok());
+    assertEquals("%zz", ((EscapeException) r.err()).getEscape());
+
+    // the error is the one ParseQuery gives, a bad key escape does not run into the value
+    for (String q : new String[]{"%4=x&b=1", "a=%4&b", "%4", "a=1;b&%zz=1", "k=%e6%97&x=%G"}) {
+      r = CanonicalRequest.canonicalQuery(q);
+      assertEquals(q, URLs.ParseQuery(q).err().getMessage(), r.err().getMessage());
+    }
+    assertEquals("%4", ((EscapeException) CanonicalRequest.canonicalQuery("%4=x").err()).getEscape());
+  }
+
+  @Test
+  public void testMatchesSortedEncoding() {
+    Random random = new Random(16);
+    String alphabet = "aAbB0~-._*+ %/=日😃";
+    for (int round = 0; round < 500; round++) {
+      Values values = new Values();
+      int n = random.nextInt(40);
+      for (int i = 0; i < n; i++) {
+        values.add(randomString(random, alphabet), randomString(random, alphabet));
+      }
+
+      List<String> pairs = new ArrayList<>();
+      values.forEach((k, vs) -> vs.forEach(v -> pairs.add(
+          UrlEncoder.encode(k, StandardCharsets.UTF_8, PercentEncodeSet.RFC3986_UNRESERVED) + "="
+              + UrlEncoder.encode(v, StandardCharsets.UTF_8, PercentEncodeSet.RFC3986_UNRESERVED))));
+      pairs.sort((a, b) -> {
+        int c = a.substring(0, a.indexOf('=')).compareTo(b.substring(0, b.indexOf('=')));
+        return c != 0 ? c : a.substring(a.indexOf('=')).compareTo(b.substring(b.indexOf('=')));
+      });
+      String expected = String.join("&", pairs);
+
+      assertEquals(expected, CanonicalRequest.canonicalQuery(values));
+      Result<String, Exception> r = CanonicalRequest.canonicalQuery(values.encode());
+      assertNull(r.err());
+      assertEquals(expected, r.ok());
+    }
+  }
+
+  private static String randomString(Random random, String alphabet) {
+    StringBuilder sb = new StringBuilder();
+    int n = random.nextInt(6);
+    for (int i = 0; i < n; i++) {
+      sb.appendCodePoint(alphabet.codePointAt(alphabet.offsetByCodePoints(0, random.nextInt(alphabet.codePointCount(0, alphabet.length())))));
+    }
+    return sb.toString();
+  }
+
+}
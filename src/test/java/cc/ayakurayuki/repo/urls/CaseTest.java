@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -20,6 +22,7 @@ import cc.ayakurayuki.repo.urls.Cases.StringURLTest;
 import cc.ayakurayuki.repo.urls.Cases.URLHostnameAndPortTest;
 import cc.ayakurayuki.repo.urls.Cases.URLRedactedTest;
 import cc.ayakurayuki.repo.urls.Cases.URLTest;
+import cc.ayakurayuki.repo.urls.exception.UrlException;
 import cc.ayakurayuki.repo.urls.wrapper.Result;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -69,6 +72,34 @@ public class CaseTest {
     }
   }
 
+  @Test
+  public void testParseRange() {
+    for (URLTest tt : Cases.urlTests) {
+      // parse straight out of a larger, non-String buffer
+      StringBuilder line = new StringBuilder("GET ").append(tt.in()).append(" HTTP/1.1");
+      Result<URL, Exception> parsed = URLs.Parse(line, 4, 4 + tt.in().length());
+      if (parsed.isErr()) {
+        fail(String.format("Parse(\"%s\", 4, %d) returned error %s", line, 4 + tt.in().length(), parsed.err().getMessage()));
+      }
+      assertEquals(String.format("Parse(%s, range)\n\tgot:  %s\n\twant: %s\n", tt.in(), ufmt(parsed.ok()), ufmt(tt.out())), tt.out(), parsed.ok());
+    }
+
+    for (ParseTest test : Cases.parseTests) {
+      String line = "?" + test.query + "#";
+      Result<Values, Exception> parseResult = URLs.ParseQuery(line, 1, line.length() - 1);
+      assertEquals(String.format("ParseQuery(%s, range) error %s", test.query, parseResult.err()), test.ok, !parseResult.isErr());
+      assertEquals(String.format("ParseQuery(%s, range)", test.query), URLs.ParseQuery(test.query).ok(), parseResult.ok());
+    }
+
+    for (EscapeTest tt : Cases.unescapeTests) {
+      String line = "%%" + tt.in + "%";
+      Result<String, Exception> unescapeResult = URLs.unescape(line, 2, line.length() - 1, Encoding.QueryComponent);
+      if (!Strings.equals(unescapeResult.ok(), tt.out) || (unescapeResult.err() == null) == (tt.err != null)) {
+        fail(String.format("unescape(%s, range) == %s, %s; want %s, %s", tt.in, unescapeResult.ok(), unescapeResult.err(), tt.out, tt.err));
+      }
+    }
+  }
+
   @Test
   public void testParseRequestURI() {
     for (ParseRequestURLTest test : Cases.parseRequestURLTests) {
@@ -196,6 +227,94 @@ public class CaseTest {
     }
   }
 
+  @Test
+  public void testEscapeReturnsInput() {
+    String s = "already-safe_value.1~2";
+    assertSame(s, URLs.QueryEscape(s));
+    assertSame(s, URLs.PathEscape(s));
+  }
+
+  @Test
+  public void testEscapeLoneSurrogate() {
+    // unpaired surrogates are not valid UTF-16, they become '?' like String.getBytes does
+    assertEquals("a%3Fb", URLs.QueryEscape("a\uD83Db"));
+    assertEquals("a%3F", URLs.PathEscape("a\uDE03"));
+  }
+
+  @Test
+  public void testStacklessErrors() {
+    Exception err = URLs.QueryUnescape("%zz").err();
+    assertEquals("invalid URL escape %zz", err.getMessage());
+    assertEquals(0, err.getStackTrace().length);
+
+    err = URLs.Parse("http://[::1]:namedport").err();
+    assertEquals(0, err.getStackTrace().length);
+    assertTrue(err.getCause() instanceof IllegalArgumentException);
+    assertEquals("invalid port :namedport after host", err.getCause().getMessage());
+    assertEquals(0, err.getCause().getStackTrace().length);
+
+    err = URLs.Parse("http://%41:8080/").err();
+    assertEquals("invalid URL escape %41", err.getCause().getMessage());
+    assertTrue(err.toString().endsWith(": invalid URL escape %41"));
+
+    err = URLs.ParseQuery("a=1;b=2&c%zz&d=3;e").err();
+    assertTrue(err instanceof UrlException);
+    assertEquals(0, err.getStackTrace().length);
+  }
+
+  @Test
+  public void testLongInputs() {
+    // long enough for the chunked scans
+    for (EscapeTest tt : Cases.queryEscapeTests) {
+      String in = "x".repeat(100) + tt.in.repeat(20);
+      String out = "x".repeat(100) + tt.out.repeat(20);
+      assertEquals(out, URLs.QueryEscape(in));
+      assertEquals(in, URLs.QueryUnescape(out).ok());
+    }
+    for (EscapeTest tt : Cases.pathEscapeTests) {
+      String in = tt.in.repeat(20) + "y".repeat(100);
+      assertEquals(tt.out.repeat(20) + "y".repeat(100), URLs.PathEscape(in));
+    }
+
+    String plain = "abcdefghijklmnopqrstuvwxyz0123456789".repeat(30);
+    assertFalse(Strings.containsCTLByte(plain));
+    assertTrue(Strings.containsCTLByte(plain + "\u007f"));
+    assertTrue(Strings.containsCTLByte(plain.substring(0, 700) + "\n" + plain));
+    assertFalse(Strings.containsCTLByte(plain + "\u0080"));
+  }
+
+  @Test
+  public void testEscapeTo() {
+    for (EscapeTest tt : Cases.queryEscapeTests) {
+      String actual = URLs.escapeTo(new StringBuilder("k="), tt.in, Encoding.QueryComponent).toString();
+      assertEquals(String.format("escapeTo(%s, QueryComponent) == %s (expected %s)", tt.in, actual, "k=" + tt.out), "k=" + tt.out, actual);
+    }
+    for (EscapeTest tt : Cases.pathEscapeTests) {
+      String actual = URLs.escapeTo(new StringBuilder("/"), tt.in, Encoding.PathSegment).toString();
+      assertEquals(String.format("escapeTo(%s, PathSegment) == %s (expected %s)", tt.in, actual, "/" + tt.out), "/" + tt.out, actual);
+    }
+  }
+
+  @Test
+  public void testUnescapeTo() {
+    for (EscapeTest tt : Cases.unescapeTests) {
+      StringBuilder buf = new StringBuilder("v=");
+      Exception err = URLs.unescapeTo(buf, tt.in, Encoding.QueryComponent);
+      if ((err == null) == (tt.err != null)) {
+        fail(String.format("unescapeTo(%s) error %s; want %s", tt.in, err, tt.err));
+      }
+      String want = tt.err == null ? "v=" + tt.out : "v=";
+      assertEquals(String.format("unescapeTo(%s) == %s (expected %s)", tt.in, buf, want), want, buf.toString());
+    }
+
+    // malformed UTF-8 is replaced the same way the String path does it
+    for (String in : List.of("%E6a%97", "%FF%C0%80", "%F0%9F%98", "%ED%A0%80", "x%E6%97%A5%E6%9C")) {
+      StringBuilder buf = new StringBuilder();
+      assertNull(URLs.unescapeTo(buf, in, Encoding.PathSegment));
+      assertEquals(String.format("unescapeTo(%s)", in), URLs.PathUnescape(in).ok(), buf.toString());
+    }
+  }
+
   @Test
   public void testEncodeQuery() {
     for (EncodeQueryTest tt : Cases.encodeQueryTests) {
@@ -345,6 +464,88 @@ public class CaseTest {
     }
   }
 
+  @Test
+  public void testIsValid() {
+    for (URLTest tt : Cases.urlTests) {
+      assertTrue(String.format("isValid(%s)", tt.in()), URLs.isValid(tt.in()));
+    }
+    for (ParseErrorsTest tt : Cases.parseErrorsTests) {
+      assertEquals(String.format("isValid(%s)", tt.in), URLs.Parse(tt.in).isErr(), !URLs.isValid(tt.in));
+    }
+    for (String in : List.of("", "*", "http://[::1]:namedport", "http://%41:8080/", "http://us%zzer@host/", "http://[fe80::1%25%10]/", "mailto:x", "a:b/c", ":x")) {
+      assertEquals(String.format("isValid(%s)", in), URLs.Parse(in).isErr(), !URLs.isValid(in));
+    }
+  }
+
+  @Test
+  public void testEnsureEscaped() {
+    String[][] tests = {
+        {"/already%20done", "/already%20done"},
+        {"/a b/%e6%97%a5本", "/a%20b/%E6%97%A5%E6%9C%AC"},
+        {"/100%/%zz/%4", "/100%25/%25zz/%254"},
+        {"/sub-delims!$&'()*+,;=:@", "/sub-delims!$&'()*+,;=:@"},
+        {"/q?x#y", "/q%3Fx%23y"},
+        {"%\uFF11\uFF12x", "%25%EF%BC%91%EF%BC%92x"}, // fullwidth digits are not hex
+    };
+    for (String[] tt : tests) {
+      String got = URLs.ensureEscaped(tt[0], Encoding.Path);
+      assertEquals(tt[0], tt[1], got);
+      assertTrue(got, URLs.validEncoded(got, Encoding.Path));
+      assertSame(got, URLs.ensureEscaped(got, Encoding.Path));
+      assertEquals(URLs.PathUnescape(got).ok(), URLs.PathUnescape(URLs.ensureEscaped(tt[1], Encoding.Path)).ok());
+    }
+
+    assertEquals("a+b%3F%26", URLs.ensureEscaped("a b?%26", Encoding.QueryComponent));
+    for (EscapeTest tt : Cases.pathEscapeTests) {
+      assertEquals(tt.out, URLs.ensureEscaped(URLs.PathEscape(tt.in), Encoding.PathSegment));
+    }
+  }
+
+  @Test
+  public void testScanner() {
+    String in = "https://user:p@ss@[fe80::1%25en0]:8080/a:b/c?q=/:@#frag?/";
+    UrlScanner u = UrlScanner.scan(in, 0, in.length(), true);
+    assertEquals(5, u.schemeLength);
+    assertEquals(6, u.rest);
+    assertEquals(-1, u.ctl);
+    assertEquals(-1, u.colon);
+    assertEquals(in.indexOf("@["), u.at);
+    assertEquals(in.indexOf("%25"), u.zone);
+    assertEquals(in.indexOf("]"), u.bracket);
+    assertEquals(in.indexOf(":8080"), u.hostColon);
+    assertEquals(in.indexOf("/a:b"), u.authorityEnd);
+    assertEquals(in.indexOf('?'), u.query);
+    assertEquals(in.indexOf('#'), u.fragment);
+
+    in = "rel:ative/path\u0001?x#y";
+    u = UrlScanner.scan(in, 4, in.length(), false);
+    assertEquals(0, u.schemeLength);
+    assertEquals(-1, u.fragment);
+    assertEquals(in.indexOf('\u0001'), u.ctl);
+
+    in = "cache_object:foo/bar";
+    u = UrlScanner.scan(in, 0, in.length(), true);
+    assertEquals(0, u.schemeLength);
+    assertEquals(in.indexOf(':'), u.colon);
+    assertEquals(-1, u.authorityEnd);
+  }
+
+  @Test
+  public void testPrimitiveLookups() {
+    assertEquals(4, URLs.schemeLength("http://x", 0, 8));
+    assertEquals(6, URLs.schemeLength("GET mailto:x", 4, 12));
+    assertEquals(0, URLs.schemeLength("/path:x", 0, 7));
+    assertEquals(-1, URLs.schemeLength(":x", 0, 2));
+
+    for (URLHostnameAndPortTest tt : Cases.urlHostnameAndPortTests) {
+      int hostEnd = URLs.indexOfHostEnd(tt.in, 0, tt.in.length());
+      assertEquals(tt.port, hostEnd < tt.in.length() ? tt.in.substring(hostEnd + 1) : "");
+    }
+    assertEquals(14, URLs.indexOfHostEnd("[::1]:80/[::1]:80", 9, 17));
+    assertEquals(14, URLs.indexOfHostEnd("[::1]:80/[::1]:80", 9, 14));
+    assertEquals(11, URLs.indexOfHostEnd("//host:port", 2, 11));
+  }
+
   // issue 11202
   @Test
   public void testStarRequest() {
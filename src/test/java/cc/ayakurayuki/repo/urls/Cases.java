@@ -489,7 +489,10 @@ public final class Cases {
         new EscapeTest("123%45%6", "", new EscapeException("%6")), // not enough characters after %
         new EscapeTest("%zzzzz", "", new EscapeException("%zz")), // invalid hex digits
         new EscapeTest("a+b", "a b", null),
-        new EscapeTest("a%20b", "a b", null)
+        new EscapeTest("a%20b", "a b", null),
+        new EscapeTest("%E6%97%A5%E6%9C%AC", "日本", null),
+        new EscapeTest("日本+%E8%AA%9E", "日本 語", null), // unescaped non-ASCII next to escapes
+        new EscapeTest("\uD83D\uDE03+%F0%9F%98%83", "\uD83D\uDE03 \uD83D\uDE03", null)
     );
   }
 
@@ -501,6 +504,8 @@ public final class Cases {
         new EscapeTest("abc", "abc", null),
         new EscapeTest("one two", "one+two", null),
         new EscapeTest("10%", "10%25", null),
+        new EscapeTest("日本語 テキスト", "%E6%97%A5%E6%9C%AC%E8%AA%9E+%E3%83%86%E3%82%AD%E3%82%B9%E3%83%88", null),
+        new EscapeTest("\uD83D\uDE03\uD842\uDFB7", "%F0%9F%98%83%F0%A0%AE%B7", null),
         new EscapeTest(" ?&=#+%!<>#\"{}|\\^[]`☺\t:/@$'()*,;", "+%3F%26%3D%23%2B%25%21%3C%3E%23%22%7B%7D%7C%5C%5E%5B%5D%60%E2%98%BA%09%3A%2F%40%24%27%28%29%2A%2C%3B", null)
     );
   }
@@ -515,6 +520,8 @@ public final class Cases {
         new EscapeTest("a/b", "a%2Fb", null),
         new EscapeTest("one two", "one%20two", null),
         new EscapeTest("10%", "10%25", null),
+        new EscapeTest("日本語 テキスト", "%E6%97%A5%E6%9C%AC%E8%AA%9E%20%E3%83%86%E3%82%AD%E3%82%B9%E3%83%88", null),
+        new EscapeTest("\uD83D\uDE03\uD842\uDFB7", "%F0%9F%98%83%F0%A0%AE%B7", null),
         new EscapeTest(" ?&=#+%!<>#\"{}|\\^[]`☺\t:/@$'()*,;", "%20%3F&=%23+%25%21%3C%3E%23%22%7B%7D%7C%5C%5E%5B%5D%60%E2%98%BA%09:%2F@$%27%28%29%2A%2C%3B", null)
     );
   }
@@ -984,7 +991,27 @@ public final class Cases {
         new ShouldEscapeTest('z', Encoding.Host, false),
         new ShouldEscapeTest('_', Encoding.Host, false),
         new ShouldEscapeTest('-', Encoding.Host, false),
-        new ShouldEscapeTest('.', Encoding.Host, false)
+        new ShouldEscapeTest('.', Encoding.Host, false),
+
+        // Path and path segment (§3.3)
+        new ShouldEscapeTest('/', Encoding.Path, false),
+        new ShouldEscapeTest(';', Encoding.Path, false),
+        new ShouldEscapeTest('?', Encoding.Path, true),
+        new ShouldEscapeTest('/', Encoding.PathSegment, true),
+        new ShouldEscapeTest(',', Encoding.PathSegment, true),
+        new ShouldEscapeTest('@', Encoding.PathSegment, false),
+
+        // Query and fragment (§3.4, §3.5)
+        new ShouldEscapeTest('&', Encoding.QueryComponent, true),
+        new ShouldEscapeTest(' ', Encoding.QueryComponent, true),
+        new ShouldEscapeTest('?', Encoding.Fragment, false),
+        new ShouldEscapeTest('!', Encoding.Fragment, false),
+        new ShouldEscapeTest('\'', Encoding.Fragment, true),
+
+        // Control and non-ASCII characters
+        new ShouldEscapeTest('\u007f', Encoding.Host, true),
+        new ShouldEscapeTest('\u00e9', Encoding.Path, true),
+        new ShouldEscapeTest('\u00e9', Encoding.Host, true)
     );
   }
 
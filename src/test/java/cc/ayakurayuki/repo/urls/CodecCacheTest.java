@@ -0,0 +1,154 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.Cases.EscapeTest;
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CodecCacheTest {
+
+  @Test
+  public void testMatchesUncached() {
+    CodecCache cache = new CodecCache(64, 64, 1);
+    for (int round = 0; round < 3; round++) {
+      for (EscapeTest tt : Cases.unescapeTests) {
+        Result<String, Exception> r = cache.unescape(tt.in, Encoding.QueryComponent);
+        if (tt.err != null) {
+          assertTrue(r.err() instanceof EscapeException);
+        } else {
+          assertNull(r.err());
+          assertEquals(tt.out, r.ok());
+        }
+      }
+      for (EscapeTest tt : Cases.queryEscapeTests) {
+        assertEquals(tt.out, cache.escape(tt.in, Encoding.QueryComponent));
+      }
+      for (EscapeTest tt : Cases.pathEscapeTests) {
+        assertEquals(tt.out, cache.escape(tt.in, Encoding.PathSegment));
+      }
+    }
+    assertTrue(cache.hits() > 0);
+  }
+
+  @Test
+  public void testAdmission() {
+    CodecCache cache = new CodecCache(16, 8);
+    assertEquals("a+b", cache.escape("a b", Encoding.QueryComponent));
+    assertEquals("a+b", cache.escape("a b", Encoding.QueryComponent));
+    assertEquals(0, cache.hits());
+    assertEquals(2, cache.misses());
+
+    // seen twice, so the second result was admitted
+    String cached = cache.escape("a b", Encoding.QueryComponent);
+    assertSame(cached, cache.escape("a b", Encoding.QueryComponent));
+    assertEquals(2, cache.hits());
+
+    // the same input in another mode is another entry
+    assertEquals("a%20b", cache.escape("a b", Encoding.PathSegment));
+    assertEquals(3, cache.misses());
+
+    // long inputs bypass the cache
+    for (int i = 0; i < 5; i++) {
+      cache.escape("a long input", Encoding.QueryComponent);
+    }
+    assertEquals(2, cache.hits());
+    assertEquals(3, cache.misses());
+    assertEquals(0.4, cache.hitRate(), 1e-9);
+
+    cache.clear();
+    assertEquals(0, cache.hits());
+    assertEquals(0, cache.misses());
+  }
+
+  @Test
+  public void testBounded() {
+    CodecCache cache = new CodecCache(32, 16, 1);
+    for (int i = 0; i < 10000; i++) {
+      String s = "k " + i;
+      assertEquals("k+" + i, cache.escape(s, Encoding.QueryComponent));
+    }
+    // popular inputs stay, despite the stream of one-off ones
+    for (int i = 0; i < 10; i++) {
+      cache.escape("utm_source", Encoding.QueryComponent);
+    }
+    for (int i = 0; i < 1000; i++) {
+      cache.escape("x " + i, Encoding.QueryComponent);
+      if (i % 20 == 0) {
+        long hits = cache.hits();
+        assertEquals("utm_source", cache.escape("utm_source", Encoding.QueryComponent));
+        assertEquals(hits + 1, cache.hits());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    CodecCache cache = new CodecCache(256, 32);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int seed = t;
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < 20000; i++) {
+            int k = (i * 7 + seed) % 500;
+            String s = "key " + k + "&v=日本";
+            assertEquals(URLs.QueryEscape(s), cache.escape(s, Encoding.QueryComponent));
+            assertEquals(s, cache.unescape(URLs.QueryEscape(s), Encoding.QueryComponent).ok());
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(8 * 20000 * 2, cache.hits() + cache.misses());
+    assertTrue(cache.hits() > 0);
+  }
+
+  @Test
+  public void testConcurrentHitsKeepFrequencies() throws Exception {
+    CodecCache cache = new CodecCache(32, 16, 1);
+    cache.escape("utm_source", Encoding.QueryComponent);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < 50000; i++) {
+            cache.escape("utm_source", Encoding.QueryComponent);
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    // the hits of the other threads were counted, the popular input outlives one-off ones
+    for (int i = 0; i < 200; i++) {
+      cache.escape("x " + i, Encoding.QueryComponent);
+    }
+    long hits = cache.hits();
+    cache.escape("utm_source", Encoding.QueryComponent);
+    assertEquals(hits + 1, cache.hits());
+  }
+
+}
@@ -0,0 +1,93 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import cc.ayakurayuki.repo.urls.Cases.EscapeTest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EscapingStreamTest {
+
+  @Test
+  public void testWriter() throws IOException {
+    for (EscapeTest tt : Cases.queryEscapeTests) {
+      assertEquals(tt.out, escapeInChunks(tt.in, Encoding.QueryComponent, 1, 12));
+      assertEquals(tt.out, escapeInChunks(tt.in, Encoding.QueryComponent, 3, 8192));
+    }
+    for (EscapeTest tt : Cases.pathEscapeTests) {
+      assertEquals(tt.out, escapeInChunks(tt.in, Encoding.PathSegment, 2, 16));
+    }
+
+    String large = "key=日本語 テキスト&😃/".repeat(10000);
+    for (Encoding mode : List.of(Encoding.QueryComponent, Encoding.PathSegment, Encoding.Fragment)) {
+      assertEquals(URLs.escape(large, mode), escapeInChunks(large, mode, 777, 100));
+    }
+  }
+
+  @Test
+  public void testWriterSurrogates() throws IOException {
+    StringWriter sw = new StringWriter();
+    try (EscapingWriter w = new EscapingWriter(sw, Encoding.QueryComponent)) {
+      w.write('\uD83D');
+      w.write("\uDE03a\uD83D");
+      w.write('b');
+      w.write('\uDE03');
+      w.write('\uD83D');
+    }
+    // the trailing high surrogate is only known to be unpaired on close
+    assertEquals("%F0%9F%98%83a%3Fb%3F%3F", sw.toString());
+  }
+
+  @Test
+  public void testOutputStream() throws IOException {
+    for (EscapeTest tt : Cases.queryEscapeTests) {
+      byte[] in = tt.in.getBytes(StandardCharsets.UTF_8);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (EscapingOutputStream out = new EscapingOutputStream(bytes, Encoding.QueryComponent, 3)) {
+        for (int i = 0; i < in.length; i += 2) {
+          if (i % 4 == 0) {
+            out.write(in[i]);
+            if (i + 1 < in.length) {
+              out.write(in[i + 1]);
+            }
+          } else {
+            out.write(in, i, Math.min(2, in.length - i));
+          }
+        }
+      }
+      assertEquals(tt.out, bytes.toString(StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Test
+  public void testClosed() throws IOException {
+    EscapingWriter w = new EscapingWriter(new StringWriter(), Encoding.Path);
+    w.close();
+    w.close();
+    try {
+      w.write("a");
+      fail("write after close gave no error");
+    } catch (IOException e) {
+      // ok
+    }
+  }
+
+  private static String escapeInChunks(String in, Encoding mode, int chunk, int bufferSize) throws IOException {
+    StringWriter sw = new StringWriter();
+    try (EscapingWriter w = new EscapingWriter(sw, mode, bufferSize)) {
+      for (int i = 0; i < in.length(); i += chunk) {
+        w.write(in, i, Math.min(chunk, in.length() - i));
+      }
+    }
+    return sw.toString();
+  }
+
+}
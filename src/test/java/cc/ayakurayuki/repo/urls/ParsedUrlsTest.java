@@ -0,0 +1,92 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import cc.ayakurayuki.repo.urls.Cases.ParseErrorsTest;
+import cc.ayakurayuki.repo.urls.Cases.URLTest;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParsedUrlsTest {
+
+  @Test
+  public void testParseAllMatchesParse() {
+    List<String> in = inputs(50000);
+    assertSameAsParse(in, URLs.parseAll(in));
+    assertSameAsParse(in, URLs.parseAll(in.stream()));
+    assertSameAsParse(in, in.stream().collect(URLs.toParsedUrls()));
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      assertSameAsParse(in, URLs.parseAll(in, pool));
+    } finally {
+      pool.shutdown();
+    }
+
+    List<String> linked = new LinkedList<>(in.subList(0, 3000));
+    assertSameAsParse(linked, URLs.parseAll(linked));
+  }
+
+  @Test
+  public void testErrors() {
+    List<String> in = Arrays.asList("http://a/", "http://[::1", null, ":", "/ok", "http://x:namedport");
+    ParsedUrls parsed = URLs.parseAll(in);
+    assertEquals(6, parsed.size());
+    assertEquals(3, parsed.errorCount());
+    assertEquals(1, parsed.errorIndex(0));
+    assertEquals(3, parsed.errorIndex(1));
+    assertEquals(5, parsed.errorIndex(2));
+    assertNull(parsed.get(3));
+    assertSame(parsed.error(1), parsed.errorOf(3));
+    assertNull(parsed.errorOf(4));
+    assertSame(URL.empty, parsed.get(2));
+    assertEquals("/ok", parsed.urls().get(4).getPath());
+
+    ParsedUrls none = URLs.parseAll(new ArrayList<>());
+    assertEquals(0, none.size());
+    assertFalse(none.hasErrors());
+  }
+
+  private static List<String> inputs(int n) {
+    List<String> base = new ArrayList<>();
+    for (URLTest tt : Cases.urlTests) {
+      base.add(tt.in());
+    }
+    for (ParseErrorsTest tt : Cases.parseErrorsTests) {
+      base.add(tt.in);
+    }
+    Random random = new Random(24);
+    return random.ints(n, 0, base.size()).mapToObj(base::get).collect(Collectors.toList());
+  }
+
+  private static void assertSameAsParse(List<String> in, ParsedUrls parsed) {
+    assertEquals(in.size(), parsed.size());
+    int k = 0;
+    for (int i = 0; i < in.size(); i++) {
+      Result<URL, Exception> want = URLs.Parse(in.get(i));
+      if (want.isErr()) {
+        assertNull(parsed.get(i));
+        assertEquals(i, parsed.errorIndex(k));
+        assertEquals(want.err().getMessage(), parsed.error(k).getMessage());
+        k++;
+      } else {
+        assertEquals(in.get(i), want.ok(), parsed.get(i));
+      }
+    }
+    assertEquals(k, parsed.errorCount());
+  }
+
+}
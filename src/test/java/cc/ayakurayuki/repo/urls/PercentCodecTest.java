@@ -0,0 +1,154 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import cc.ayakurayuki.repo.urls.Cases.EscapeTest;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PercentCodecTest {
+
+  private static final List<String> samples = List.of(
+      "",
+      "abc",
+      "abcdefghABCDEFGH01234567",
+      "one two three four five",
+      "path/to/some file;v=1?x&y=z#frag",
+      "日本語 テキスト",
+      "\uD83D\uDE03\uD842\uDFB7",
+      " ?&=#+%!<>#\"{}|\\^[]`☺\t:/@$'()*,;",
+      "[fe80::1%en0]:8080",
+      "www.example.com:80"
+  );
+
+  @Test
+  public void testEscape() {
+    for (Encoding mode : Encoding.values()) {
+      for (String s : samples) {
+        byte[] want = URLs.escape(s, mode).getBytes(StandardCharsets.US_ASCII);
+        byte[] src = s.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(String.format("escape(%s, %s)", s, mode), want, PercentCodec.escape(src, mode));
+        assertArrayEquals(String.format("escape(%s, %s) direct", s, mode), want, escapeBuffer(ByteBuffer.allocateDirect(src.length).put(src).flip(), 64, mode));
+        assertArrayEquals(String.format("escape(%s, %s) heap, small dst", s, mode), want, escapeBuffer(ByteBuffer.wrap(src), 3, mode));
+      }
+    }
+
+    // a malformed escape followed by non-ASCII text is reported in characters, not raw bytes
+    for (String s : new String[]{"%~é", "a%é", "%2日本", "x%😀x", "%2😀", "%e6%9"}) {
+      String want = URLs.unescape(s, Encoding.QueryComponent).err().getMessage();
+      byte[] src = s.getBytes(StandardCharsets.UTF_8);
+      assertEquals(s, want, PercentCodec.unescape(src, Encoding.QueryComponent).err().getMessage());
+      ByteBuffer in = ByteBuffer.allocateDirect(src.length).put(src).flip();
+      assertEquals(s, want, PercentCodec.unescape(in, ByteBuffer.allocate(src.length), Encoding.QueryComponent).getMessage());
+    }
+
+    byte[] plain = "abcdefghijklmnop".getBytes(StandardCharsets.US_ASCII);
+    assertSame(plain, PercentCodec.escape(plain, Encoding.Path));
+    assertArrayEquals("%20b".getBytes(StandardCharsets.US_ASCII), PercentCodec.escape("a b c".getBytes(StandardCharsets.US_ASCII), 1, 2, Encoding.Path));
+  }
+
+  @Test
+  public void testUnescape() {
+    for (EscapeTest tt : Cases.unescapeTests) {
+      byte[] src = tt.in.getBytes(StandardCharsets.UTF_8);
+      Result<byte[], Exception> result = PercentCodec.unescape(src, Encoding.QueryComponent);
+      if ((result.err() == null) == (tt.err != null)) {
+        fail(String.format("unescape(%s) error %s; want %s", tt.in, result.err(), tt.err));
+      }
+      if (tt.err != null) {
+        assertEquals(tt.err.getMessage(), result.err().getMessage());
+        continue;
+      }
+      assertEquals(tt.out, new String(result.ok(), StandardCharsets.UTF_8));
+
+      ByteBuffer in = ByteBuffer.allocateDirect(src.length).put(src).flip();
+      ByteBuffer out = ByteBuffer.allocate(src.length);
+      assertNull(PercentCodec.unescape(in, out, Encoding.QueryComponent));
+      assertFalse(in.hasRemaining());
+      assertEquals(tt.out, new String(out.array(), 0, out.position(), StandardCharsets.UTF_8));
+    }
+
+    for (Encoding mode : Encoding.values()) {
+      for (String s : samples) {
+        String escaped = URLs.escape(s, mode);
+        Result<String, Exception> want = URLs.unescape(escaped, mode);
+        Result<byte[], Exception> got = PercentCodec.unescape(escaped.getBytes(StandardCharsets.US_ASCII), mode);
+        if ((want.err() == null) != (got.err() == null)) {
+          fail(String.format("unescape(%s, %s) error %s; want %s", escaped, mode, got.err(), want.err()));
+        }
+        if (want.err() == null) {
+          assertEquals(want.ok(), new String(got.ok(), StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    // a malformed escape followed by non-ASCII text is reported in characters, not raw bytes
+    for (String s : new String[]{"%~é", "a%é", "%2日本", "x%😀x", "%2😀", "%e6%9"}) {
+      String want = URLs.unescape(s, Encoding.QueryComponent).err().getMessage();
+      byte[] src = s.getBytes(StandardCharsets.UTF_8);
+      assertEquals(s, want, PercentCodec.unescape(src, Encoding.QueryComponent).err().getMessage());
+      ByteBuffer in = ByteBuffer.allocateDirect(src.length).put(src).flip();
+      assertEquals(s, want, PercentCodec.unescape(in, ByteBuffer.allocate(src.length), Encoding.QueryComponent).getMessage());
+    }
+
+    byte[] plain = "abcdefghijklmnop".getBytes(StandardCharsets.US_ASCII);
+    assertSame(plain, PercentCodec.unescape(plain, Encoding.Path).ok());
+    assertNotNull(PercentCodec.unescape("%41".getBytes(StandardCharsets.US_ASCII), Encoding.Host).err());
+  }
+
+  @Test
+  public void testUnescapeResumes() {
+    byte[] src = "a%20b+c%E6%97%A5/d".getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer in = ByteBuffer.wrap(src);
+    ByteBuffer out = ByteBuffer.allocate(64);
+    ByteBuffer small = ByteBuffer.allocate(2);
+    while (in.hasRemaining()) {
+      assertNull(PercentCodec.unescape(in, small, Encoding.QueryComponent));
+      out.put(small.flip());
+      small.clear();
+    }
+    assertEquals("a b c日/d", new String(out.array(), 0, out.position(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWordTricks() {
+    for (int b = 0; b < 256; b++) {
+      boolean alnum = b < 0x80 && Character.isLetterOrDigit(b);
+      for (int pos = 0; pos < 8; pos++) {
+        // surround the byte with bytes that sit right next to the ranges' edges
+        long w = 0x2F3A40405B607B7FL & ~(0xFFL << (pos * 8)) | (long) b << (pos * 8);
+        assertEquals(String.format("alnum(%02x @ %d)", b, pos), alnum, (PercentCodec.alnum(w) >>> (pos * 8 + 7) & 1) == 1);
+        assertEquals(String.format("equal(%02x @ %d)", b, pos), b == '%', (PercentCodec.equal(w, '%') >>> (pos * 8 + 7) & 1) == 1);
+      }
+    }
+  }
+
+  private static byte[] escapeBuffer(ByteBuffer src, int chunk, Encoding mode) {
+    ByteBuffer out = ByteBuffer.allocate(src.remaining() * 3);
+    ByteBuffer dst = ByteBuffer.allocate(chunk);
+    boolean done;
+    do {
+      done = PercentCodec.escape(src, dst, mode);
+      out.put(dst.flip());
+      dst.clear();
+    } while (!done);
+    assertTrue(!src.hasRemaining());
+    byte[] result = new byte[out.position()];
+    out.flip().get(result);
+    return result;
+  }
+
+}
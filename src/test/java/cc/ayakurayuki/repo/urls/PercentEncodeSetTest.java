@@ -0,0 +1,101 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PercentEncodeSetTest {
+
+  static final String ALL_ASCII;
+
+  static {
+    StringBuilder sb = new StringBuilder();
+    for (char c = 0; c < 128; c++) {
+      sb.append(c);
+    }
+    ALL_ASCII = sb.toString();
+  }
+
+  @Test
+  public void testPredefinedSets() {
+    assertEquals("-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz~", kept(PercentEncodeSet.RFC3986_UNRESERVED));
+    assertSame(PercentEncodeSet.RFC3986_UNRESERVED, PercentEncodeSet.OAUTH);
+    assertEquals("!$%&'()*+,-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz~", kept(PercentEncodeSet.WHATWG_USERINFO));
+    assertEquals("!'()*-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz~", kept(PercentEncodeSet.WHATWG_COMPONENT));
+    assertEquals("*-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz", kept(PercentEncodeSet.FORM_URLENCODED));
+    assertTrue(PercentEncodeSet.C0_CONTROL.shouldEncode('\u007f'));
+    assertTrue(PercentEncodeSet.C0_CONTROL.shouldEncode('é'));
+    assertFalse(PercentEncodeSet.C0_CONTROL.shouldEncode(' '));
+  }
+
+  @Test
+  public void testEscape() {
+    assertEquals("a%20b%2A~%F0%9F%98%83", URLs.escape("a b*~😃", PercentEncodeSet.RFC3986_UNRESERVED));
+    assertEquals("a+b*%7E%F0%9F%98%83", URLs.escape("a b*~😃", PercentEncodeSet.FORM_URLENCODED));
+    assertEquals("user%40mail:p%40ss", URLs.escape("user@mail:p@ss", PercentEncodeSet.WHATWG_USERINFO.toBuilder().keep(":").build()));
+
+    String s = "nothing-to_escape";
+    assertSame(s, URLs.escape(s, PercentEncodeSet.RFC3986_UNRESERVED));
+  }
+
+  @Test
+  public void testEscapeToMatchesEscape() throws IOException {
+    String s = ALL_ASCII + "日本語 😃\uD800x";
+    for (PercentEncodeSet set : new PercentEncodeSet[]{
+        PercentEncodeSet.C0_CONTROL,
+        PercentEncodeSet.RFC3986_UNRESERVED,
+        PercentEncodeSet.WHATWG_USERINFO,
+        PercentEncodeSet.FORM_URLENCODED,
+    }) {
+      StringBuilder sb = new StringBuilder();
+      URLs.escapeTo(sb, s, set);
+      assertEquals(set.toString(), URLs.escape(s, set), sb.toString());
+      assertEquals(set.toString(), URLs.escape(s, set), UrlEncoder.encode(s, StandardCharsets.UTF_8, set));
+    }
+  }
+
+  @Test
+  public void testUrlEncoder() {
+    assertEquals("a%20*", UrlEncoder.encode("a *"));
+    assertEquals("a%20%2A", UrlEncoder.encode("a *", StandardCharsets.UTF_8, PercentEncodeSet.RFC3986_UNRESERVED));
+
+    Charset sjis = Charset.forName("Shift_JIS");
+    assertEquals("%93%FA+%96%7B*", UrlEncoder.encode("日 本*", sjis, PercentEncodeSet.FORM_URLENCODED));
+  }
+
+  @Test
+  public void testBuilder() {
+    PercentEncodeSet set = PercentEncodeSet.builder().encode('a', 'c').encode("/").spaceAsPlus(true).build();
+    assertEquals("%61%62%63d+%2F", URLs.escape("abcd /", set));
+    assertEquals(set, set.toBuilder().build());
+    assertFalse(set.equals(set.toBuilder().keep("/").build()));
+
+    try {
+      PercentEncodeSet.builder().encode("é");
+      throw new AssertionError("non-ASCII accepted");
+    } catch (IllegalArgumentException expected) {
+      // ok
+    }
+  }
+
+  private static String kept(PercentEncodeSet set) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < ALL_ASCII.length(); i++) {
+      char c = ALL_ASCII.charAt(i);
+      if (!set.shouldEncode(c)) {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+}
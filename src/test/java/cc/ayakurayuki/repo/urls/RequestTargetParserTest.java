@@ -0,0 +1,160 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.Cases.ParseErrorsTest;
+import cc.ayakurayuki.repo.urls.Cases.URLTest;
+import cc.ayakurayuki.repo.urls.RequestTarget.Form;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestTargetParserTest {
+
+  @Test
+  public void testChunksMatchWhole() {
+    RequestTargetParser parser = new RequestTargetParser(1 << 16);
+    Random random = new Random(23);
+    for (URLTest tt : Cases.urlTests) {
+      assertSameAsWhole(parser, random, tt.in(), false);
+      assertSameAsWhole(parser, random, tt.in(), true);
+    }
+    for (ParseErrorsTest tt : Cases.parseErrorsTests) {
+      assertSameAsWhole(parser, random, tt.in, false);
+    }
+
+    String[] parts = {"http:", "//", "/", "user@", "[::1]", "[fe80::1%25en0]", "%2", "5", ":443", "example.com",
+                      "a%2Fb", "%zz", "?", "q=1", "#", "*", ":", "é", "\u0001"};
+    for (int n = 0; n < 20000; n++) {
+      StringBuilder sb = new StringBuilder();
+      for (int k = random.nextInt(6); k > 0; k--) {
+        sb.append(parts[random.nextInt(parts.length)]);
+      }
+      assertSameAsWhole(parser, random, sb.toString(), random.nextInt(4) == 0);
+    }
+  }
+
+  @Test
+  public void testOneByteWrites() {
+    RequestTargetParser parser = new RequestTargetParser(256);
+    byte[] line = bytes("/search?q=%E6%97%A5 HTTP/1.1\r\n");
+    int i = 0;
+    while (!parser.isDone()) {
+      i += parser.feed(line, i, 1);
+    }
+    assertEquals(19, i);
+    assertEquals(' ', line[i]);
+    RequestTarget t = parser.result().ok();
+    assertEquals(Form.Origin, t.form());
+    assertEquals("/search", t.url().getPath());
+    assertEquals("日", t.url().query().value("q"));
+    assertEquals(0, parser.feed(line, i, line.length - i));
+  }
+
+  @Test
+  public void testEarlyRejection() {
+    RequestTargetParser parser = new RequestTargetParser(16);
+    assertRejectedAfter(parser, "/a\u0001", "invalid control characters in url");
+    assertRejectedAfter(parser, "where/", "invalid uri for request");
+    assertRejectedAfter(parser, ":", "missing protocol scheme");
+    assertRejectedAfter(parser, "*/", "invalid uri for request");
+    assertRejectedAfter(parser, "/0123456789abcdef", "request target longer than 16 bytes");
+
+    // a scheme is still possible, nothing is known yet
+    parser.reset();
+    parser.feed(bytes("http"), 0, 4);
+    assertFalse(parser.isDone());
+    parser.feed(bytes("s://x/ "), 0, 7);
+    assertEquals("https://x/", parser.result().ok().url().toString());
+
+    // the host is checked once the target is complete
+    parser.reset(true);
+    parser.feed(bytes("host:port"), 0, 9);
+    assertFalse(parser.isDone());
+    assertTrue(parser.finish().isErr());
+
+    // an authority-form target has no userinfo
+    parser.reset(true);
+    parser.feed(bytes("user@"), 0, 5);
+    assertTrue(parser.isDone());
+    assertEquals("invalid userinfo in authority-form target", parser.result().err().getCause().getMessage());
+  }
+
+  @Test
+  public void testBuffers() {
+    RequestTargetParser parser = new RequestTargetParser(1024);
+    ByteBuffer direct = ByteBuffer.allocateDirect(64);
+    direct.put(bytes("CONNECT example.com:443 HTTP/1.1")).flip().position(8);
+    parser.reset(true);
+    assertEquals(15, parser.feed(direct));
+    assertEquals(23, direct.position());
+    RequestTarget t = parser.result().ok();
+    assertEquals(Form.Authority, t.form());
+    assertEquals("example.com:443", t.url().getHost());
+
+    parser.reset();
+    ByteBuffer heap = ByteBuffer.wrap(bytes("GET * HTTP/1.1"));
+    heap.position(4);
+    assertEquals(1, parser.feed(heap));
+    assertEquals(Form.Asterisk, parser.result().ok().form());
+
+    // growing past the initial buffer
+    StringBuilder sb = new StringBuilder("/");
+    for (int i = 0; i < 100; i++) {
+      sb.append("segment").append(i).append('/');
+    }
+    parser.reset();
+    byte[] b = bytes(sb.toString());
+    for (int i = 0; i < b.length; i += 7) {
+      parser.feed(b, i, Math.min(7, b.length - i));
+    }
+    assertEquals(sb.toString(), parser.finish().ok().url().getPath());
+  }
+
+  private static void assertRejectedAfter(RequestTargetParser parser, String in, String message) {
+    parser.reset();
+    byte[] b = bytes(in);
+    for (int i = 0; i < b.length && !parser.isDone(); i++) {
+      parser.feed(b, i, 1);
+    }
+    assertTrue(in, parser.isDone());
+    Result<RequestTarget, Exception> r = parser.result();
+    assertEquals(in, message, r.err().getCause().getMessage());
+  }
+
+  private static void assertSameAsWhole(RequestTargetParser parser, Random random, String in, boolean connect) {
+    if (in.indexOf(' ') >= 0) {
+      // the SP would end the target
+      return;
+    }
+    Result<RequestTarget, Exception> want = URLs.ParseRequestTarget(in, connect);
+    byte[] b = bytes(in + " HTTP/1.1");
+    parser.reset(connect);
+    int i = 0;
+    while (!parser.isDone()) {
+      int n = Math.min(1 + random.nextInt(4), b.length - i);
+      i += parser.feed(b, i, n);
+    }
+    Result<RequestTarget, Exception> got = parser.result();
+    if (want.isErr()) {
+      assertTrue(in, got.isErr());
+      return;
+    }
+    assertNull(in, got.err());
+    assertEquals(in, want.ok(), got.ok());
+    assertEquals(in, bytes(in).length, i);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,140 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.Cases.ParseErrorsTest;
+import cc.ayakurayuki.repo.urls.Cases.URLTest;
+import cc.ayakurayuki.repo.urls.RequestTarget.Form;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestTargetTest {
+
+  @Test
+  public void testBytesMatchString() {
+    for (URLTest tt : Cases.urlTests) {
+      assertSameAsString(tt.in());
+    }
+    for (ParseErrorsTest tt : Cases.parseErrorsTests) {
+      assertSameAsString(tt.in);
+    }
+
+    Random random = new Random(22);
+    String[] parts = {"http:", "//", "/", "user@", "[::1]", "[fe80::1%25en0]", ":443", "example.com",
+                      "a%2Fb", "%zz", "?", "q=1", "#", "*", ":", "é", " ", "\u0001"};
+    for (int n = 0; n < 20000; n++) {
+      StringBuilder sb = new StringBuilder();
+      for (int k = random.nextInt(6); k > 0; k--) {
+        sb.append(parts[random.nextInt(parts.length)]);
+      }
+      assertSameAsString(sb.toString());
+    }
+  }
+
+  @Test
+  public void testForms() {
+    assertTarget("/where?q=now", false, Form.Origin, "", "/where", "q=now");
+    assertTarget("http://www.example.org/pub/WWW/", false, Form.Absolute, "www.example.org", "/pub/WWW/", "");
+    assertTarget("*", false, Form.Asterisk, "", "*", "");
+    assertTarget("www.example.com:443", true, Form.Authority, "www.example.com:443", "", "");
+    assertTarget("[::1]:8443", true, Form.Authority, "[::1]:8443", "", "");
+    assertTarget("[fe80::1%25en0]:443", true, Form.Authority, "[fe80::1%en0]:443", "", "");
+    // a CONNECT to a path, as some websocket clients send
+    assertTarget("/chat", true, Form.Origin, "", "/chat", "");
+
+    // without connect, host:port is an absolute URI with an opaque
+    RequestTarget t = URLs.ParseRequestTarget("www.example.com:443", false).ok();
+    assertEquals(Form.Absolute, t.form());
+    assertEquals("www.example.com", t.url().getScheme());
+    assertEquals("443", t.url().getOpaque());
+  }
+
+  @Test
+  public void testErrors() {
+    String[] connect = {"", "host:namedport", "[::1", "ho\nst:443", "a b:443", "[fe80::1%25%zz]:443",
+                        "user@host:443", "user:pw@host:443", "@host:443", "*"};
+    for (String in : connect) {
+      assertTrue(in, URLs.ParseRequestTarget(in, true).isErr());
+      assertTrue(in, URLs.ParseRequestTarget(bytes(in), 0, bytes(in).length, true).isErr());
+    }
+    String[] other = {"", "where", "ho\nst/", "http://host:namedport/"};
+    for (String in : other) {
+      assertTrue(in, URLs.ParseRequestTarget(in, false).isErr());
+    }
+    Result<RequestTarget, Exception> r = URLs.ParseRequestTarget("host:namedport", true);
+    assertEquals(URLs.Parse("http://host:namedport").err().getCause().getMessage(), r.err().getCause().getMessage());
+  }
+
+  @Test
+  public void testBufferSlices() {
+    byte[] line = bytes("GET /a%20b?x=1 HTTP/1.1\r\n");
+    URL u = URLs.ParseRequestURI(line, 4, 10).ok();
+    assertEquals("/a b", u.getPath());
+    assertEquals("x=1", u.getRawQuery());
+
+    ByteBuffer heap = ByteBuffer.wrap(line, 4, 10).slice();
+    assertEquals(u, URLs.ParseRequestURI(heap).ok());
+    assertEquals(0, heap.position());
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(line.length);
+    direct.put(line).position(4).limit(14);
+    assertEquals(u, URLs.ParseRequestURI(direct).ok());
+    assertEquals(4, direct.position());
+
+    ByteBuffer connect = ByteBuffer.allocateDirect(32);
+    connect.put(bytes("CONNECT example.com:443 HTTP/1.1")).position(8).limit(23);
+    RequestTarget t = URLs.ParseRequestTarget(connect, true).ok();
+    assertEquals(Form.Authority, t.form());
+    assertEquals("example.com", t.url().hostname());
+    assertEquals("443", t.url().port());
+
+    // raw UTF-8 is decoded, not read byte by byte
+    assertEquals("/日本", URLs.ParseRequestURI(bytes("/日本"), 0, bytes("/日本").length).ok().getPath());
+  }
+
+  private static void assertTarget(String in, boolean connect, Form form, String host, String path, String rawQuery) {
+    for (Result<RequestTarget, Exception> r : new Result[] {
+        URLs.ParseRequestTarget(in, connect),
+        URLs.ParseRequestTarget(bytes(in), 0, bytes(in).length, connect),
+        URLs.ParseRequestTarget(ByteBuffer.wrap(bytes(in)), connect)}) {
+      assertNull(in, r.err());
+      RequestTarget t = r.ok();
+      assertEquals(in, form, t.form());
+      assertEquals(in, host, t.url().getHost());
+      assertEquals(in, path, t.url().getPath());
+      assertEquals(in, rawQuery, t.url().getRawQuery());
+    }
+  }
+
+  private static void assertSameAsString(String in) {
+    Result<URL, Exception> want = URLs.ParseRequestURI(in);
+    byte[] b = bytes(in);
+    byte[] padded = new byte[b.length + 6];
+    System.arraycopy(b, 0, padded, 3, b.length);
+    Result<URL, Exception> got = URLs.ParseRequestURI(padded, 3, b.length);
+    if (want.isErr()) {
+      assertTrue(in, got.isErr());
+      assertEquals(in, want.err().getMessage(), got.err().getMessage());
+      return;
+    }
+    assertNull(in, got.err());
+    assertEquals(in, want.ok(), got.ok());
+
+    Result<RequestTarget, Exception> target = URLs.ParseRequestTarget(padded, 3, b.length, false);
+    assertNull(in, target.err());
+    assertEquals(in, want.ok(), target.ok().url());
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
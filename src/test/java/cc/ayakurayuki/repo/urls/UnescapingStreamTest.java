@@ -0,0 +1,132 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import cc.ayakurayuki.repo.urls.Cases.EscapeTest;
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.exception.InvalidHostException;
+import cc.ayakurayuki.repo.urls.exception.MalformedEscapeException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UnescapingStreamTest {
+
+  @Test
+  public void testUnescape() throws IOException {
+    for (EscapeTest tt : Cases.unescapeTests) {
+      for (int size : new int[]{3, 4, 8192}) {
+        byte[] in = tt.in.getBytes(StandardCharsets.UTF_8);
+        try {
+          byte[] out = readAll(new UnescapingInputStream(new TrickleInputStream(in), Encoding.QueryComponent, size));
+          if (tt.err != null) {
+            fail(String.format("unescape stream(%s) gave no error; want %s", tt.in, tt.err));
+          }
+          assertEquals(tt.out, new String(out, StandardCharsets.UTF_8));
+        } catch (MalformedEscapeException e) {
+          if (tt.err == null) {
+            fail(String.format("unescape stream(%s) gave error %s", tt.in, e));
+          }
+          assertEquals(tt.err.getMessage(), e.getCause().getMessage());
+          assertEquals(tt.in.indexOf(tt.err.getEscape()), e.getOffset());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testErrorOffset() throws IOException {
+    byte[] in = ("a%20b".repeat(5000) + "%G1").getBytes(StandardCharsets.US_ASCII);
+    try {
+      readAll(new UnescapingInputStream(new ByteArrayInputStream(in), Encoding.PathSegment, 100));
+      fail("unescape stream gave no error");
+    } catch (MalformedEscapeException e) {
+      assertTrue(e.getCause() instanceof EscapeException);
+      assertEquals(25000, e.getOffset());
+    }
+
+    try {
+      readAll(new UnescapingInputStream(new ByteArrayInputStream("example.com/".getBytes(StandardCharsets.US_ASCII)), Encoding.Host));
+      fail("unescape stream gave no error");
+    } catch (MalformedEscapeException e) {
+      assertTrue(e.getCause() instanceof InvalidHostException);
+      assertEquals(11, e.getOffset());
+    }
+  }
+
+  @Test
+  public void testBytesBeforeError() throws IOException {
+    byte[] in = "a%20b%G1c".getBytes(StandardCharsets.US_ASCII);
+    try (InputStream s = new UnescapingInputStream(new ByteArrayInputStream(in), Encoding.QueryComponent)) {
+      byte[] b = new byte[16];
+      // the bytes decoded before the malformed escape are not lost
+      assertEquals(3, s.read(b));
+      assertEquals("a b", new String(b, 0, 3, StandardCharsets.US_ASCII));
+      try {
+        s.read(b);
+        fail("unescape stream gave no error");
+      } catch (MalformedEscapeException e) {
+        assertEquals(5, e.getOffset());
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    String text = "key=日本語 テキスト&😃/%+".repeat(20000);
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try (EscapingOutputStream out = new EscapingOutputStream(encoded, Encoding.QueryComponent)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] decoded = readAll(new UnescapingInputStream(new ByteArrayInputStream(encoded.toByteArray()), Encoding.QueryComponent));
+    assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), decoded);
+
+    StringBuilder sb = new StringBuilder();
+    try (Reader r = UnescapingInputStream.newReader(new TrickleInputStream(encoded.toByteArray()), Encoding.QueryComponent)) {
+      char[] cbuf = new char[333];
+      for (int n; (n = r.read(cbuf)) >= 0; ) {
+        sb.append(cbuf, 0, n);
+      }
+    }
+    assertEquals(text, sb.toString());
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (in) {
+      byte[] b = new byte[7];
+      for (int n; (n = in.read(b)) >= 0; ) {
+        out.write(b, 0, n);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * TrickleInputStream hands out one byte per read, so every escape is split across reads.
+   */
+  private static class TrickleInputStream extends ByteArrayInputStream {
+
+    TrickleInputStream(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1));
+    }
+
+  }
+
+}
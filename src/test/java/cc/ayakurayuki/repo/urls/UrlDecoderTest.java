@@ -0,0 +1,144 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.exception.EscapeException;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UrlDecoderTest {
+
+  static final String[] texts = {
+      "",
+      "plain-text_123.*~",
+      "a b+c=d&e?f",
+      "©®日本語テキスト",
+      "mixed 日本 and ascii 語",
+      "😃 surrogate",
+  };
+
+  static final Charset[] charsets = {
+      StandardCharsets.UTF_8,
+      StandardCharsets.UTF_16,
+      StandardCharsets.UTF_16LE,
+      StandardCharsets.ISO_8859_1,
+      Charset.forName("Shift_JIS"),
+      Charset.forName("GB18030"),
+  };
+
+  @Test
+  public void roundTripsUrlEncoder() {
+    for (Charset charset : charsets) {
+      for (String text : texts) {
+        String expected = new String(text.getBytes(charset), charset);
+        String encoded = UrlEncoder.encode(text, charset);
+        Result<String, Exception> decoded = UrlDecoder.decode(encoded, charset);
+        assertEquals(charset + ": " + encoded, null, decoded.err());
+        assertEquals(charset + ": " + encoded, expected, decoded.ok());
+
+        char[] buf = ("<" + encoded + ">").toCharArray();
+        int n = UrlDecoder.decode(buf, 1, encoded.length(), charset);
+        assertEquals(charset + ": " + encoded, expected, new String(buf, 1, n));
+        assertEquals('<', buf[0]);
+        assertEquals('>', buf[buf.length - 1]);
+      }
+    }
+  }
+
+  @Test
+  public void returnsSameInstanceWithoutEscapes() {
+    String s = "a+b c/d?e";
+    assertSame(s, UrlDecoder.decode(s).ok());
+    assertSame(s, UrlDecoder.decode(s, Charset.forName("Shift_JIS")).ok());
+  }
+
+  @Test
+  public void leavesPlusAlone() {
+    assertEquals("a+b c", UrlDecoder.decode("a+b%20c").ok());
+    assertEquals("a+b c", UrlDecoder.decode("a+b%20c", StandardCharsets.ISO_8859_1).ok());
+  }
+
+  @Test
+  public void replacesMalformedBytes() {
+    assertEquals("a�b", UrlDecoder.decode("a%FFb", StandardCharsets.UTF_8).ok());
+    assertEquals("a�b", UrlDecoder.decode("a%FFb", StandardCharsets.US_ASCII).ok());
+  }
+
+  @Test
+  public void rejectsMalformedEscapes() {
+    String[][] tests = {
+        {"%", "%"},
+        {"abc%2", "%2"},
+        {"%zzzzz", "%zz"},
+        {"%41%4", "%4"},
+        {"x%20%G0y", "%G0"},
+    };
+    for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1}) {
+      for (String[] tt : tests) {
+        Result<String, Exception> r = UrlDecoder.decode(tt[0], charset);
+        assertTrue(tt[0], r.err() instanceof EscapeException);
+        assertEquals(tt[0], tt[1], ((EscapeException) r.err()).getEscape());
+
+        char[] buf = tt[0].toCharArray();
+        assertEquals(tt[0], ~tt[0].lastIndexOf(tt[1]), UrlDecoder.decode(buf, 0, buf.length, charset));
+      }
+    }
+  }
+
+  @Test
+  public void testLegacyCharsetQuery() {
+    Charset sjis = Charset.forName("Shift_JIS");
+    Charset gbk = Charset.forName("GBK");
+    Charset eucjp = Charset.forName("EUC-JP");
+
+    for (Charset charset : new Charset[]{sjis, gbk, eucjp}) {
+      String text = "日本語 テキスト&=+";
+      String query = "q=" + UrlEncoder.encode(text, charset, PercentEncodeSet.FORM_URLENCODED) + "&lang=ja&q=a+b";
+      Result<Values, Exception> r = URLs.ParseQuery(query, charset);
+      assertEquals(charset.name(), null, r.err());
+      assertEquals(charset.name(), List.of(text, "a b"), r.ok().get("q"));
+      assertEquals(charset.name(), "ja", r.ok().value("lang"));
+    }
+
+    // the escapes of a charset are not UTF-8, unless utf8First finds they are
+    String mixed = "a=%93%FA%96%7B&b=%E6%97%A5%E6%9C%AC";
+    Values values = URLs.ParseQuery(mixed, sjis, true).ok();
+    assertEquals("日本", values.value("a"));
+    assertEquals("日本", values.value("b"));
+    values = URLs.ParseQuery(mixed, sjis).ok();
+    assertEquals("日本", values.value("a"));
+    assertEquals(new String(new byte[]{(byte) 0xE6, (byte) 0x97, (byte) 0xA5, (byte) 0xE6, (byte) 0x9C, (byte) 0xAC}, sjis), values.value("b"));
+
+    // the overlong encoding of '/' and a lone surrogate are not UTF-8
+    assertEquals(new String(new byte[]{(byte) 0xC0, (byte) 0xAF}, gbk), URLs.unescape("%C0%AF", 0, 6, Encoding.PathSegment, gbk, true).ok());
+    assertEquals(new String(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80}, gbk), URLs.unescape("%ED%A0%80", 0, 9, Encoding.PathSegment, gbk, true).ok());
+  }
+
+  @Test
+  public void testLegacyCharsetErrors() {
+    Charset sjis = Charset.forName("Shift_JIS");
+    Result<String, Exception> r = URLs.unescape("x%93%F", 0, 6, Encoding.QueryComponent, sjis);
+    assertTrue(r.err() instanceof EscapeException);
+    assertEquals("%F", ((EscapeException) r.err()).getEscape());
+
+    String s = "plain+text";
+    assertSame(s, URLs.unescape(s, 0, s.length(), Encoding.PathSegment, sjis).ok());
+    assertEquals("plain text", URLs.unescape(s, 0, s.length(), Encoding.QueryComponent, sjis).ok());
+
+    Result<Values, Exception> q = URLs.ParseQuery("a=1&b=%zz&c=%93%FA", sjis);
+    assertTrue(q.err() instanceof EscapeException);
+    assertEquals("1", q.ok().value("a"));
+    assertEquals("日", q.ok().value("c"));
+    assertFalse(q.ok().has("b"));
+  }
+
+}
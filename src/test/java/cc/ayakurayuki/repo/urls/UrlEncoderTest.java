@@ -2,10 +2,13 @@ package cc.ayakurayuki.repo.urls;
 
 import static org.junit.Assert.assertEquals;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -80,4 +83,44 @@ public class UrlEncoderTest {
     }
   }
 
+  @Test
+  public void matchesRunByRunEncoding() {
+    // every run of reserved characters is encoded as a whole, the way String.getBytes does it
+    List<Charset> charsets = List.of(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.US_ASCII, StandardCharsets.UTF_16,
+                                     Charset.forName("Shift_JIS"), Charset.forName("GBK"));
+    String alphabet = "aZ09-_.*~ +=?&/%é©日本\uD83D\uDE03\uD83D\uDE03";
+    Random random = new Random(42);
+    for (int it = 0; it < 2000; it++) {
+      StringBuilder sb = new StringBuilder();
+      for (int n = random.nextInt(40); n > 0; n--) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      String s = sb.toString();
+      for (Charset charset : charsets) {
+        assertEquals(String.format("encode(%s, %s)", s, charset), referenceEncode(s, charset), UrlEncoder.encode(s, charset));
+      }
+    }
+  }
+
+  private static String referenceEncode(String s, Charset charset) {
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < s.length(); ) {
+      char c = s.charAt(i);
+      if (unreservedCharacters.contains(String.valueOf(c))) {
+        out.append(c);
+        i++;
+        continue;
+      }
+      int end = i + 1;
+      while (end < s.length() && !unreservedCharacters.contains(String.valueOf(s.charAt(end)))) {
+        end++;
+      }
+      for (byte b : s.substring(i, end).getBytes(charset)) {
+        out.append(String.format("%%%02X", b & 0xFF));
+      }
+      i = end;
+    }
+    return out.toString();
+  }
+
 }
@@ -0,0 +1,88 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import cc.ayakurayuki.repo.urls.Cases.ParseErrorsTest;
+import cc.ayakurayuki.repo.urls.Cases.URLTest;
+import cc.ayakurayuki.repo.urls.wrapper.Result;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UrlViewTest {
+
+  @Test
+  public void testMatchesParse() {
+    for (URLTest tt : Cases.urlTests) {
+      assertSameAsParse(tt.in());
+    }
+    for (ParseErrorsTest tt : Cases.parseErrorsTests) {
+      assertSameAsParse(tt.in);
+    }
+
+    Random random = new Random(21);
+    String[] parts = {"http:", "HTTPS:", "//", "/", "user:p%40w@", "@", "[::1]", "[fe80::1%25en0]", ":8080", "example.com",
+                      "a%2Fb", "%zz", "%e6%97%a5", "?", "q=1&r=%20", "#", "frag%20", "*", ":", "mailto:", "x", "é", " ", "\u0001"};
+    for (int n = 0; n < 50000; n++) {
+      StringBuilder sb = new StringBuilder();
+      for (int k = random.nextInt(7); k > 0; k--) {
+        sb.append(parts[random.nextInt(parts.length)]);
+      }
+      assertSameAsParse(sb.toString());
+    }
+  }
+
+  @Test
+  public void testLazyComponents() {
+    UrlView v = URLs.parseLazy("https://user:pw@Example.COM:8443/api/v1/users%2F42?lang=ja&x=%20#top").ok();
+    assertEquals("Example.COM", v.hostname());
+    assertEquals("8443", v.port());
+    assertEquals("api", v.pathSegment(0));
+    assertEquals("v1", v.pathSegment(1));
+    assertEquals("users%2F42", v.pathSegment(2));
+    assertNull(v.pathSegment(3));
+    assertEquals("/api/v1/users/42", v.getPath());
+    assertEquals("/api/v1/users%2F42", v.escapedPath());
+    assertEquals("ja", v.query().value("lang"));
+    assertEquals("top", v.getFragment());
+    assertEquals("pw", v.getUser().password());
+
+    assertEquals("", URLs.parseLazy("/").ok().pathSegment(0));
+    assertNull(URLs.parseLazy("mailto:x@y").ok().pathSegment(0));
+
+    Result<UrlView, Exception> r = URLs.parseLazy("http://[::1]:namedport");
+    assertTrue(r.isErr());
+    assertEquals(URLs.Parse("http://[::1]:namedport").err().getMessage(), r.err().getMessage());
+  }
+
+  private static void assertSameAsParse(String in) {
+    Result<URL, Exception> want = URLs.Parse(in);
+    Result<UrlView, Exception> got = URLs.parseLazy(in);
+    if (want.isErr()) {
+      assertTrue(in, got.isErr());
+      assertEquals(in, want.err().getMessage(), got.err().getMessage());
+      return;
+    }
+    assertNull(in, got.err());
+    URL u = want.ok();
+    UrlView v = got.ok();
+    assertEquals(in, u.getHost(), v.getHost());
+    assertEquals(in, u.getPath(), v.getPath());
+    assertEquals(in, u.escapedPath(), v.escapedPath());
+    assertEquals(in, u.getFragment(), v.getFragment());
+    assertEquals(in, u.getRawQuery(), v.getRawQuery());
+    assertEquals(in, u.hostname(), v.hostname());
+    assertEquals(in, u.port(), v.port());
+    assertEquals(in, u.getScheme(), v.getScheme());
+    assertEquals(in, u.getOpaque(), v.getOpaque());
+    assertEquals(in, u.getUser(), v.getUser());
+    assertEquals(in, u.isOmitHost(), v.isOmitHost());
+    assertEquals(in, u.isForceQuery(), v.isForceQuery());
+    assertEquals(in, u, v.toURL());
+  }
+
+}
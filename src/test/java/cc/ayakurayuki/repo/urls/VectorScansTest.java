@@ -0,0 +1,96 @@
+package cc.ayakurayuki.repo.urls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.CharBuffer;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * VectorScansTest checks the Java 17 vector scans against the scalar ones in {@link Chars}.
+ * <p>
+ * VectorScans only exists in META-INF/versions/17, which the java17 profile adds to the
+ * test classpath together with the incubator module, so it is looked up by name and the
+ * tests are skipped on builds without it.
+ */
+@RunWith(JUnit4.class)
+public class VectorScansTest {
+
+  private static final String ALPHABET = "aZ09-_.~ !*'()/?#[]@$&+,;=:%\u007f\u0000\n\u0080éあ";
+
+  private static MethodHandle indexOfEscape;
+  private static MethodHandle indexOfCTL;
+  private static MethodHandle indexOfPercent;
+
+  @BeforeClass
+  public static void lookup() throws Exception {
+    assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+    Class<?> c;
+    try {
+      c = Class.forName("cc.ayakurayuki.repo.urls.VectorScans");
+    } catch (ClassNotFoundException e) {
+      assumeTrue("VectorScans is not on the classpath", false);
+      return;
+    }
+    MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+    MethodType range = MethodType.methodType(int.class, CharSequence.class, int.class, int.class);
+    indexOfEscape = lookup.findStatic(c, "indexOfEscape", range.appendParameterTypes(Encoding.class));
+    indexOfCTL = lookup.findStatic(c, "indexOfCTL", range);
+    indexOfPercent = lookup.findStatic(c, "indexOfPercent", range);
+  }
+
+  @Test
+  public void testMatchesScalar() throws Throwable {
+    Random random = new Random(8);
+    for (int n = 0; n < 20000; n++) {
+      // from one match in a few chars to long clean runs across several chunks
+      String s = random(random, random.nextInt(1500), 1 + random.nextInt(2000));
+      int from = random.nextInt(s.length() + 1);
+      int to = from + random.nextInt(s.length() - from + 1);
+      for (CharSequence cs : new CharSequence[]{s, new StringBuilder(s), CharBuffer.wrap(s)}) {
+        for (Encoding mode : Encoding.values()) {
+          assertEquals(s, Chars.indexOfEscape(cs, from, to, mode), (int) indexOfEscape.invoke(cs, from, to, mode));
+        }
+        assertEquals(s, Chars.indexOfCTL(cs, from, to), (int) indexOfCTL.invoke(cs, from, to));
+        assertEquals(s, Chars.indexOfPercent(cs, from, to), (int) indexOfPercent.invoke(cs, from, to));
+      }
+    }
+  }
+
+  @Test
+  public void testDenseMatches() throws Throwable {
+    // the escaping loops scan again right after every match
+    String s = "a b".repeat(1000);
+    int i = 0;
+    int count = 0;
+    while ((i = (int) indexOfEscape.invoke((CharSequence) s, i, s.length(), Encoding.QueryComponent)) < s.length()) {
+      assertEquals(' ', s.charAt(i));
+      count++;
+      i++;
+    }
+    assertEquals(1000, count);
+  }
+
+  /**
+   * random returns length chars, where about one in every gap chars is not a letter.
+   */
+  private static String random(Random random, int length, int gap) {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      if (random.nextInt(gap) == 0) {
+        sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      } else {
+        sb.append((char) ('a' + random.nextInt(26)));
+      }
+    }
+    return sb.toString();
+  }
+
+}